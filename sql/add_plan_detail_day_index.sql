@@ -0,0 +1,9 @@
+-- 为每日任务添加 (plan_id, day_number) 联合索引
+-- 按天数分页查询（/api/plan/{id}/details）和按天查询任务都使用该索引，
+-- 原来的 idx_plan_id 是它的前缀、idx_day_number 单独使用时区分度很低，一并删除
+USE study_planner;
+
+ALTER TABLE `plan_detail` ADD KEY `idx_plan_day` (`plan_id`, `day_number`);
+
+-- 外键 fk_detail_plan 改用 idx_plan_day，需在新索引创建后再删除旧索引
+ALTER TABLE `plan_detail` DROP KEY `idx_plan_id`, DROP KEY `idx_day_number`;
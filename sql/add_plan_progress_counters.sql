@@ -0,0 +1,22 @@
+-- 为学习计划添加进度计数字段
+-- 计划列表直接从计划行计算进度，不再逐个统计 plan_detail；创建计划和打卡时由应用维护
+USE study_planner;
+
+ALTER TABLE `study_plan`
+    ADD COLUMN `total_details` INT NOT NULL DEFAULT 0 COMMENT '每日任务总数' AFTER `status`,
+    ADD COLUMN `completed_days` INT NOT NULL DEFAULT 0 COMMENT '已完成的任务数' AFTER `total_details`;
+
+-- 按现有任务回填
+UPDATE `study_plan` sp
+LEFT JOIN (
+    SELECT `plan_id`, COUNT(*) AS total, SUM(`is_completed` = 1) AS completed
+    FROM `plan_detail`
+    GROUP BY `plan_id`
+) pd ON pd.plan_id = sp.id
+SET sp.total_details = COALESCE(pd.total, 0),
+    sp.completed_days = COALESCE(pd.completed, 0);
+
+-- 已全部完成但仍为"进行中"的计划（原先在查询计划列表时才更新状态）
+UPDATE `study_plan`
+SET `status` = '已完成'
+WHERE `status` = '进行中' AND `total_details` > 0 AND `completed_days` >= `total_details`;
@@ -80,7 +80,9 @@ CREATE TABLE `study_plan` (
     `total_days` INT DEFAULT 30 COMMENT '计划总天数',
     `start_date` DATE NOT NULL COMMENT '开始日期',
     `end_date` DATE NOT NULL COMMENT '结束日期',
-    `status` VARCHAR(20) DEFAULT '进行中' COMMENT '状态(进行中/已完成/已放弃)',
+    `status` VARCHAR(20) DEFAULT '进行中' COMMENT '状态(进行中/已完成/已放弃/已过期)',
+    `total_details` INT NOT NULL DEFAULT 0 COMMENT '每日任务总数',
+    `completed_days` INT NOT NULL DEFAULT 0 COMMENT '已完成的任务数',
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     PRIMARY KEY (`id`),
@@ -102,8 +104,7 @@ CREATE TABLE `plan_detail` (
     `is_completed` TINYINT DEFAULT 0 COMMENT '是否完成(0-未完成/1-已完成)',
     `create_time` DATETIME DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     PRIMARY KEY (`id`),
-    KEY `idx_plan_id` (`plan_id`),
-    KEY `idx_day_number` (`day_number`),
+    KEY `idx_plan_day` (`plan_id`, `day_number`),
     CONSTRAINT `fk_detail_plan` FOREIGN KEY (`plan_id`) REFERENCES `study_plan` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='计划详情表（每日任务）';
 
@@ -347,8 +348,8 @@ INSERT INTO `user` (`username`, `password`, `email`) VALUES
 ('demo', '$2a$10$N.zmdr9k7uOCQb376NoUnuTJ8iAt6Z5EHsM8lE9lBOsl7iAt6Z5EH', 'demo@example.com');
 
 -- 插入示例学习计划
-INSERT INTO `study_plan` (`user_id`, `title`, `goal`, `level`, `daily_hours`, `total_days`, `start_date`, `end_date`, `status`) VALUES 
-(1, 'Python入门30天', '从零开始学习Python编程，掌握基础语法和常用库', '零基础', 2.0, 30, '2025-11-25', '2025-12-24', '进行中');
+INSERT INTO `study_plan` (`user_id`, `title`, `goal`, `level`, `daily_hours`, `total_days`, `start_date`, `end_date`, `status`, `total_details`) VALUES 
+(1, 'Python入门30天', '从零开始学习Python编程，掌握基础语法和常用库', '零基础', 2.0, 30, '2025-11-25', '2025-12-24', '进行中', 5);
 
 -- 插入示例每日任务
 INSERT INTO `plan_detail` (`plan_id`, `day_number`, `content`, `duration`, `resources`) VALUES 
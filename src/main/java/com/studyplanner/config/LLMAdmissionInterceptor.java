@@ -0,0 +1,71 @@
+package com.studyplanner.config;
+
+import com.alibaba.fastjson2.JSON;
+import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.service.llm.AdmissionRejectedException;
+import com.studyplanner.service.llm.LLMAdmissionLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * LLM接口准入拦截器
+ * 请求进入控制器前申请准入许可，请求结束（包括SSE等异步请求结束）后释放；
+ * 被拒绝时直接返回429和 Retry-After 响应头。
+ * 请求结束后仍在后台继续的任务（如异步计划生成）可以通过 detachPermit 接管许可，在任务结束时自行释放
+ */
+@Component
+public class LLMAdmissionInterceptor implements HandlerInterceptor {
+
+    private static final String PERMIT_ATTRIBUTE = LLMAdmissionInterceptor.class.getName() + ".permit";
+
+    @Autowired
+    private LLMAdmissionLimiter admissionLimiter;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 跨域预检请求不占用名额；异步请求完成后的再次分派沿用已有许可
+        if (!admissionLimiter.isEnabled() || CorsUtils.isPreFlightRequest(request)
+                || request.getAttribute(PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+
+        HttpSession session = request.getSession(false);
+        Long userId = session != null ? (Long) session.getAttribute("userId") : null;
+        String clientKey = userId != null ? "user:" + userId : "ip:" + request.getRemoteAddr();
+
+        try {
+            request.setAttribute(PERMIT_ATTRIBUTE, admissionLimiter.acquire(clientKey, userId != null));
+            return true;
+        } catch (AdmissionRejectedException e) {
+            response.setStatus(429);
+            response.setHeader("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write(JSON.toJSONString(ApiResponse.error(429, e.getMessage())));
+            return false;
+        }
+    }
+
+    /**
+     * 从请求上取走准入许可，之后由调用方负责释放；准入控制未启用时返回null
+     */
+    public static LLMAdmissionLimiter.Permit detachPermit(HttpServletRequest request) {
+        Object permit = request.getAttribute(PERMIT_ATTRIBUTE);
+        request.removeAttribute(PERMIT_ATTRIBUTE);
+        return permit instanceof LLMAdmissionLimiter.Permit ? (LLMAdmissionLimiter.Permit) permit : null;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object permit = request.getAttribute(PERMIT_ATTRIBUTE);
+        if (permit instanceof LLMAdmissionLimiter.Permit) {
+            ((LLMAdmissionLimiter.Permit) permit).release();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.studyplanner.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * LLM调用线程池配置
+ * 用于需要并发发起多个LLM请求的场景（如长计划分段并行生成）
+ */
+@Configuration
+public class LLMExecutorConfig {
+
+    @Value("${llm.executor.threads:16}")
+    private int threads;
+
+    @Value("${llm.executor.queue-capacity:500}")
+    private int queueCapacity;
+
+    @Bean(name = "llmExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService llmExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "llm-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                // 队列满时由提交者自己执行，起到自然的背压作用
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
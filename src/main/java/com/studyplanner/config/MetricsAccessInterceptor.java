@@ -0,0 +1,84 @@
+package com.studyplanner.config;
+
+import com.alibaba.fastjson2.JSON;
+import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.entity.User;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.cors.CorsUtils;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 运行指标接口访问控制
+ * 指标中包含模型、队列和缓存等内部状态，只允许本机请求或 metrics.admin-usernames 中的登录用户访问
+ */
+@Component
+public class MetricsAccessInterceptor implements HandlerInterceptor {
+
+    @Value("${metrics.allow-local:true}")
+    private boolean allowLocal;
+
+    @Value("${metrics.admin-usernames:}")
+    private String adminUsernames;
+
+    private volatile Set<String> admins;
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (CorsUtils.isPreFlightRequest(request)) {
+            return true;
+        }
+        if (allowLocal && isLoopback(request.getRemoteAddr())) {
+            return true;
+        }
+
+        HttpSession session = request.getSession(false);
+        Object user = session != null ? session.getAttribute("user") : null;
+        if (user == null) {
+            reject(response, ApiResponse.unauthorized("请先登录"));
+            return false;
+        }
+        if (!admins().contains(((User) user).getUsername())) {
+            reject(response, ApiResponse.error(403, "无权访问运行指标"));
+            return false;
+        }
+        return true;
+    }
+
+    private Set<String> admins() {
+        Set<String> result = admins;
+        if (result == null) {
+            result = Arrays.stream(adminUsernames.split(","))
+                    .map(String::trim)
+                    .filter(name -> !name.isEmpty())
+                    .collect(Collectors.toSet());
+            admins = result;
+        }
+        return result;
+    }
+
+    private boolean isLoopback(String address) {
+        try {
+            return address != null && InetAddress.getByName(address).isLoopbackAddress();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void reject(HttpServletResponse response, ApiResponse<?> body) throws IOException {
+        response.setStatus(body.getCode());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding("UTF-8");
+        response.getWriter().write(JSON.toJSONString(body));
+    }
+}
@@ -0,0 +1,26 @@
+package com.studyplanner.config;
+
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.security.Principal;
+import java.util.Map;
+
+/**
+ * WebSocket握手处理器
+ * 以登录用户ID作为连接的Principal，使 /user/queue/... 的点对点推送能够路由到对应用户
+ */
+public class UserHandshakeHandler extends DefaultHandshakeHandler {
+
+    @Override
+    protected Principal determineUser(ServerHttpRequest request, WebSocketHandler wsHandler,
+                                      Map<String, Object> attributes) {
+        Object userId = attributes.get("userId");
+        if (userId != null) {
+            String name = String.valueOf(userId);
+            return () -> name;
+        }
+        return super.determineUser(request, wsHandler, attributes);
+    }
+}
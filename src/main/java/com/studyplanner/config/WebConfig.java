@@ -1,7 +1,9 @@
 package com.studyplanner.config;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
@@ -10,6 +12,12 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @Configuration
 public class WebConfig implements WebMvcConfigurer {
     
+    @Autowired
+    private LLMAdmissionInterceptor llmAdmissionInterceptor;
+    
+    @Autowired
+    private MetricsAccessInterceptor metricsAccessInterceptor;
+    
     /**
      * 配置跨域请求
      */
@@ -22,4 +30,15 @@ public class WebConfig implements WebMvcConfigurer {
                 .allowCredentials(true)
                 .maxAge(3600);
     }
+    
+    /**
+     * 调用LLM的接口统一经过准入控制（并发、速率限制与加权排队）；运行指标接口仅限本机或管理员访问
+     */
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(llmAdmissionInterceptor)
+                .addPathPatterns("/api/plan/generate", "/api/plan/generate/**", "/api/ai/chat", "/api/ai/chat/**");
+        registry.addInterceptor(metricsAccessInterceptor)
+                .addPathPatterns("/api/metrics", "/api/metrics/**");
+    }
 }
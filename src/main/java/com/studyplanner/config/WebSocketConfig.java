@@ -32,6 +32,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/api/chat/ws")
                 .setAllowedOriginPatterns("*") // 允许所有来源（生产环境应限制）
                 .addInterceptors(authInterceptor)
+                .setHandshakeHandler(new UserHandshakeHandler()) // 以userId作为Principal，支持 /user/queue/... 推送
                 .withSockJS(); // 启用SockJS支持（同时支持原生WebSocket）
     }
 }
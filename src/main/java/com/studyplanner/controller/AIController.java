@@ -3,12 +3,25 @@ package com.studyplanner.controller;
 import com.studyplanner.dto.ApiResponse;
 import com.studyplanner.dto.ChatRequest;
 import com.studyplanner.service.LLMService;
+import com.studyplanner.service.llm.ChatContextManager;
+import com.studyplanner.service.llm.LLMStreamListener;
+import com.studyplanner.service.llm.SemanticAnswerCache;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpSession;
+import okhttp3.Call;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @RestController
@@ -18,6 +31,12 @@ public class AIController {
     @Autowired
     private LLMService llmService;
     
+    @Autowired
+    private ChatContextManager contextManager;
+    
+    @Autowired
+    private SemanticAnswerCache answerCache;
+    
     @Value("${llm.api.base-url}")
     private String systemApiUrl;
     
@@ -27,26 +46,50 @@ public class AIController {
     @Value("${llm.api.model:Qwen/Qwen3-8B}")
     private String defaultModel;
     
+    @Value("${llm.stream.timeout-ms:300000}")
+    private Long streamTimeoutMs;
+    
+    @Value("${llm.async.chat-timeout-ms:120000}")
+    private Long chatTimeoutMs;
+    
     /**
      * 登录用户使用系统API进行聊天
+     * 异步处理：等待LLM响应期间不占用请求线程，超时后取消上游调用
+     * 单轮问题先查语义缓存，命中时直接返回
      */
     @PostMapping("/chat")
-    public ApiResponse<String> chat(@RequestBody ChatRequest request) {
+    public DeferredResult<ApiResponse<String>> chat(@RequestBody ChatRequest request, HttpServletRequest httpRequest) {
+        String model = request.getModel();
+        if (model == null || model.isEmpty()) {
+            model = defaultModel;
+        }
+        
         try {
-            String model = request.getModel();
-            if (model == null || model.isEmpty()) {
-                model = defaultModel;
+            List<Map<String, String>> rawMessages = convertMessages(request.getMessages());
+            String question = SemanticAnswerCache.singleTurnQuestion(rawMessages);
+            String cached = question != null ? answerCache.get(model, question) : null;
+            if (cached != null) {
+                return DeferredResults.completed(ApiResponse.success(cached));
             }
             
-            // 转换消息格式
-            List<Map<String, String>> messages = convertMessages(request.getMessages());
+            // 转换消息格式，较早的对话折叠为摘要
+            String useModel = model;
+            CompletableFuture<String> reply = DeferredResults.compose(
+                    contextManager.prepare(principal(httpRequest), request.getConversationId(),
+                            systemApiUrl, systemApiKey, useModel, rawMessages),
+                    messages -> llmService.chatAsync(systemApiUrl, systemApiKey, useModel, messages));
+            if (question != null) {
+                reply.thenAccept(answer -> answerCache.put(useModel, question, answer));
+            }
             
             // 调用系统API
-            String response = llmService.chat(systemApiUrl, systemApiKey, model, messages);
-            
-            return ApiResponse.success(response);
+            return DeferredResults.of(
+                    reply,
+                    chatTimeoutMs,
+                    ApiResponse::success,
+                    "AI服务调用失败: ");
         } catch (Exception e) {
-            return ApiResponse.error("AI服务调用失败: " + e.getMessage());
+            return DeferredResults.completed(ApiResponse.error("AI服务调用失败: " + e.getMessage()));
         }
     }
     
@@ -54,40 +97,247 @@ public class AIController {
      * 未登录用户使用自定义API进行聊天
      */
     @PostMapping("/chat/public")
-    public ApiResponse<String> chatPublic(@RequestBody ChatRequest request) {
+    public DeferredResult<ApiResponse<String>> chatPublic(@RequestBody ChatRequest request,
+                                                          HttpServletRequest httpRequest) {
+        // 验证必要参数
+        if (request.getCustomApiUrl() == null || request.getCustomApiUrl().isEmpty()) {
+            return DeferredResults.completed(ApiResponse.error("请提供API URL"));
+        }
+        if (request.getCustomApiKey() == null || request.getCustomApiKey().isEmpty()) {
+            return DeferredResults.completed(ApiResponse.error("请提供API Key"));
+        }
+        if (request.getCustomModel() == null || request.getCustomModel().isEmpty()) {
+            return DeferredResults.completed(ApiResponse.error("请提供模型名称"));
+        }
+        
         try {
-            // 验证必要参数
-            if (request.getCustomApiUrl() == null || request.getCustomApiUrl().isEmpty()) {
-                return ApiResponse.error("请提供API URL");
-            }
-            if (request.getCustomApiKey() == null || request.getCustomApiKey().isEmpty()) {
-                return ApiResponse.error("请提供API Key");
-            }
-            if (request.getCustomModel() == null || request.getCustomModel().isEmpty()) {
-                return ApiResponse.error("请提供模型名称");
-            }
-            
-            // 转换消息格式
-            List<Map<String, String>> messages = convertMessages(request.getMessages());
+            // 转换消息格式，较早的对话折叠为摘要
+            CompletableFuture<String> reply = DeferredResults.compose(
+                    contextManager.prepare(principal(httpRequest), request.getConversationId(),
+                            request.getCustomApiUrl(), request.getCustomApiKey(), request.getCustomModel(),
+                            convertMessages(request.getMessages())),
+                    messages -> llmService.chatAsync(
+                        request.getCustomApiUrl(),
+                        request.getCustomApiKey(),
+                        request.getCustomModel(),
+                        messages
+                    ));
             
             // 调用自定义API
-            String response = llmService.chat(
-                request.getCustomApiUrl(),
-                request.getCustomApiKey(),
-                request.getCustomModel(),
-                messages
-            );
+            return DeferredResults.of(
+                    reply,
+                    chatTimeoutMs,
+                    ApiResponse::success,
+                    "AI服务调用失败: ");
+        } catch (Exception e) {
+            return DeferredResults.completed(ApiResponse.error("AI服务调用失败: " + e.getMessage()));
+        }
+    }
+    
+    /**
+     * 登录用户使用系统API进行流式聊天（SSE逐段推送）
+     * 单轮问题命中语义缓存时直接推送缓存的回答
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatStream(@RequestBody ChatRequest request, HttpServletRequest httpRequest) {
+        String model = request.getModel();
+        if (model == null || model.isEmpty()) {
+            model = defaultModel;
+        }
+        
+        try {
+            List<Map<String, String>> rawMessages = convertMessages(request.getMessages());
+            String question = SemanticAnswerCache.singleTurnQuestion(rawMessages);
+            String cached = question != null ? answerCache.get(model, question) : null;
+            if (cached != null) {
+                return cachedEmitter(cached);
+            }
             
-            return ApiResponse.success(response);
+            String useModel = model;
+            return relayStream(principal(httpRequest), systemApiUrl, systemApiKey, model, request.getConversationId(),
+                    rawMessages, question != null ? answer -> answerCache.put(useModel, question, answer) : null);
+        } catch (Exception e) {
+            return errorEmitter("AI服务调用失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 未登录用户使用自定义API进行流式聊天（SSE逐段推送）
+     */
+    @PostMapping(value = "/chat/public/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter chatPublicStream(@RequestBody ChatRequest request, HttpServletRequest httpRequest) {
+        if (request.getCustomApiUrl() == null || request.getCustomApiUrl().isEmpty()) {
+            return errorEmitter("请提供API URL");
+        }
+        if (request.getCustomApiKey() == null || request.getCustomApiKey().isEmpty()) {
+            return errorEmitter("请提供API Key");
+        }
+        if (request.getCustomModel() == null || request.getCustomModel().isEmpty()) {
+            return errorEmitter("请提供模型名称");
+        }
+        
+        try {
+            return relayStream(principal(httpRequest), request.getCustomApiUrl(), request.getCustomApiKey(),
+                    request.getCustomModel(),
+                    request.getConversationId(), convertMessages(request.getMessages()), null);
         } catch (Exception e) {
-            return ApiResponse.error("AI服务调用失败: " + e.getMessage());
+            return errorEmitter("AI服务调用失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 将上游的流式增量转发给客户端
+     * 事件：delta（增量文本）、done（结束）、error（失败）
+     * 客户端断开、超时或发送失败时立即取消上游请求，避免继续消耗token
+     *
+     * @param onAnswer 流正常结束后接收完整回答（可为null）
+     */
+    private SseEmitter relayStream(String principal, String baseUrl, String apiKey, String model,
+                                   String conversationId, List<Map<String, String>> rawMessages,
+                                   Consumer<String> onAnswer) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        AtomicReference<Call> upstream = new AtomicReference<>();
+        AtomicBoolean closed = new AtomicBoolean(false);
+        // 较早的对话折叠为摘要后再发起流式请求
+        CompletableFuture<List<Map<String, String>>> prepared =
+                contextManager.prepare(principal, conversationId, baseUrl, apiKey, model, rawMessages);
+        
+        Runnable cancelUpstream = () -> {
+            if (closed.compareAndSet(false, true)) {
+                // 摘要请求尚未完成时一并取消
+                prepared.cancel(true);
+                Call call = upstream.get();
+                if (call != null) {
+                    call.cancel();
+                }
+            }
+        };
+        emitter.onCompletion(cancelUpstream);
+        emitter.onTimeout(cancelUpstream);
+        emitter.onError(error -> cancelUpstream.run());
+        
+        prepared.whenComplete((messages, prepareError) -> {
+            if (closed.get()) {
+                return;
+            }
+            if (prepareError != null) {
+                sendErrorAndComplete(emitter, "AI服务调用失败: " + prepareError.getMessage());
+                return;
+            }
+            startRelay(emitter, baseUrl, apiKey, model, messages, upstream, closed, cancelUpstream, onAnswer);
+        });
+        return emitter;
+    }
+    
+    private void startRelay(SseEmitter emitter, String baseUrl, String apiKey, String model,
+                            List<Map<String, String>> messages, AtomicReference<Call> upstream,
+                            AtomicBoolean closed, Runnable cancelUpstream, Consumer<String> onAnswer) {
+        StringBuilder answer = onAnswer != null ? new StringBuilder() : null;
+        try {
+            Call call = llmService.streamChat(baseUrl, apiKey, model, messages, new LLMStreamListener() {
+                @Override
+                public void onDelta(String content) {
+                    if (closed.get()) {
+                        return;
+                    }
+                    if (answer != null) {
+                        answer.append(content);
+                    }
+                    try {
+                        emitter.send(SseEmitter.event().name("delta").data(content));
+                    } catch (Exception e) {
+                        // 客户端已断开
+                        cancelUpstream.run();
+                    }
+                }
+                
+                @Override
+                public void onComplete() {
+                    // 客户端中途断开时回答不完整，不回调
+                    if (closed.get()) {
+                        return;
+                    }
+                    if (answer != null) {
+                        onAnswer.accept(answer.toString());
+                    }
+                    try {
+                        emitter.send(SseEmitter.event().name("done").data(""));
+                    } catch (Exception ignored) {
+                        // 客户端已断开
+                    }
+                    emitter.complete();
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    // 主动取消产生的错误无需再通知客户端
+                    if (closed.get()) {
+                        return;
+                    }
+                    sendErrorAndComplete(emitter, "AI服务调用失败: " + error.getMessage());
+                }
+            });
+            upstream.set(call);
+            // 注册前客户端已断开的情况
+            if (closed.get()) {
+                call.cancel();
+            }
+        } catch (Exception e) {
+            sendErrorAndComplete(emitter, "AI服务调用失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 直接推送缓存的完整回答
+     */
+    private SseEmitter cachedEmitter(String answer) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        try {
+            emitter.send(SseEmitter.event().name("delta").data(answer));
+            emitter.send(SseEmitter.event().name("done").data(""));
+        } catch (Exception ignored) {
+            // 客户端已断开
+        }
+        emitter.complete();
+        return emitter;
+    }
+    
+    private SseEmitter errorEmitter(String message) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        sendErrorAndComplete(emitter, message);
+        return emitter;
+    }
+    
+    private void sendErrorAndComplete(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event().name("error").data(message));
+        } catch (Exception ignored) {
+            // 客户端已断开
         }
+        emitter.complete();
     }
     
+    /**
+     * 调用方标识：登录用户按用户ID，未登录按IP，用于隔离各自的会话摘要
+     */
+    private String principal(HttpServletRequest httpRequest) {
+        HttpSession session = httpRequest.getSession(false);
+        Object userId = session != null ? session.getAttribute("userId") : null;
+        return userId != null ? "user:" + userId : "ip:" + httpRequest.getRemoteAddr();
+    }
+    
+    /**
+     * 转换消息格式；消息缺少 role 或 content 时抛出 IllegalArgumentException
+     */
     private List<Map<String, String>> convertMessages(List<ChatRequest.ChatMessage> chatMessages) {
         if (chatMessages == null) {
             return List.of();
         }
+        for (ChatRequest.ChatMessage msg : chatMessages) {
+            if (msg == null || msg.getRole() == null || msg.getContent() == null) {
+                throw new IllegalArgumentException("消息的role和content不能为空");
+            }
+        }
         return chatMessages.stream()
             .map(msg -> Map.of("role", msg.getRole(), "content", msg.getContent()))
             .collect(Collectors.toList());
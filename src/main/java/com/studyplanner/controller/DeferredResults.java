@@ -0,0 +1,103 @@
+package com.studyplanner.controller;
+
+import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.service.llm.LLMUnavailableException;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * 将LLM调用的 CompletableFuture 适配为异步请求结果
+ * 等待期间不占用Tomcat请求线程；超时或客户端断开时取消底层任务（进而取消上游HTTP调用）
+ */
+final class DeferredResults {
+
+    private DeferredResults() {
+    }
+
+    /**
+     * @param timeoutMs    服务端超时时间，超时返回504；LLM服务熔断不可用时返回503
+     * @param onSuccess    成功结果到响应的转换
+     * @param errorPrefix  失败时错误消息的前缀
+     */
+    static <T, R> DeferredResult<ApiResponse<R>> of(CompletableFuture<T> future, long timeoutMs,
+                                                    Function<T, ApiResponse<R>> onSuccess, String errorPrefix) {
+        DeferredResult<ApiResponse<R>> result = new DeferredResult<>(timeoutMs);
+        result.onTimeout(() -> {
+            future.cancel(true);
+            result.setResult(ApiResponse.error(504, errorPrefix + "等待超时，请稍后重试"));
+        });
+        result.onError(error -> future.cancel(true));
+
+        future.whenComplete((value, error) -> {
+            if (error == null) {
+                result.setResult(onSuccess.apply(value));
+            } else if (!future.isCancelled()) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                result.setResult(cause instanceof LLMUnavailableException
+                        ? ApiResponse.error(503, errorPrefix + cause.getMessage())
+                        : ApiResponse.error(errorPrefix + cause.getMessage()));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 串联两个异步阶段，取消返回的 future 时同时取消正在进行的阶段
+     * CompletableFuture.thenCompose 得到的 future 被取消时不会取消内部的 future，上游HTTP调用会继续进行
+     */
+    static <T, U> CompletableFuture<U> compose(CompletableFuture<T> first,
+                                               Function<? super T, CompletableFuture<U>> next) {
+        CompletableFuture<U> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<U>> inner = new AtomicReference<>();
+        first.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+                return;
+            }
+            CompletableFuture<U> stage;
+            try {
+                stage = next.apply(value);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+                return;
+            }
+            inner.set(stage);
+            // 设置 inner 之前已被取消的情况
+            if (result.isCancelled()) {
+                stage.cancel(true);
+                return;
+            }
+            stage.whenComplete((u, stageError) -> {
+                if (stageError != null) {
+                    result.completeExceptionally(stageError);
+                } else {
+                    result.complete(u);
+                }
+            });
+        });
+        result.whenComplete((u, error) -> {
+            if (result.isCancelled()) {
+                first.cancel(true);
+                CompletableFuture<U> stage = inner.get();
+                if (stage != null) {
+                    stage.cancel(true);
+                }
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 立即完成的结果（参数校验失败、未登录等）
+     */
+    static <R> DeferredResult<ApiResponse<R>> completed(ApiResponse<R> response) {
+        DeferredResult<ApiResponse<R>> result = new DeferredResult<>();
+        result.setResult(response);
+        return result;
+    }
+}
@@ -0,0 +1,222 @@
+package com.studyplanner.controller;
+
+import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.service.OutboundIoExecutor;
+import com.studyplanner.service.PlanContentCache;
+import com.studyplanner.service.PlanJobService;
+import com.studyplanner.service.PlanStatusService;
+import com.studyplanner.service.llm.ChatContextManager;
+import com.studyplanner.service.llm.LLMAdmissionLimiter;
+import com.studyplanner.service.llm.LLMCircuitBreaker;
+import com.studyplanner.service.llm.LLMHedgingPolicy;
+import com.studyplanner.service.llm.LLMHttpClients;
+import com.studyplanner.service.llm.LLMMetrics;
+import com.studyplanner.service.llm.LLMModelRouter;
+import com.studyplanner.service.llm.LLMReasoningStats;
+import com.studyplanner.service.llm.LLMRecordReplayInterceptor;
+import com.studyplanner.service.llm.LLMRequestCoalescer;
+import com.studyplanner.service.llm.PlanResultCache;
+import com.studyplanner.service.llm.PlanTokenBudget;
+import com.studyplanner.service.llm.SemanticAnswerCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * 运行指标控制器
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    @Autowired
+    private PlanResultCache planResultCache;
+
+    @Autowired
+    private PlanJobService planJobService;
+
+    @Autowired
+    private LLMRequestCoalescer requestCoalescer;
+
+    @Autowired
+    private PlanTokenBudget tokenBudget;
+
+    @Autowired
+    private LLMHttpClients httpClients;
+
+    @Autowired
+    private LLMCircuitBreaker circuitBreaker;
+
+    @Autowired
+    private LLMHedgingPolicy hedgingPolicy;
+
+    @Autowired
+    private LLMAdmissionLimiter admissionLimiter;
+
+    @Autowired
+    private OutboundIoExecutor outboundIoExecutor;
+
+    @Autowired
+    private ChatContextManager contextManager;
+
+    @Autowired
+    private LLMReasoningStats reasoningStats;
+
+    @Autowired
+    private SemanticAnswerCache answerCache;
+
+    @Autowired
+    private LLMRecordReplayInterceptor recordReplayInterceptor;
+
+    @Autowired
+    private LLMMetrics llmMetrics;
+
+    @Autowired
+    private LLMModelRouter modelRouter;
+
+    @Autowired
+    private PlanStatusService planStatusService;
+
+    @Autowired
+    private PlanContentCache planContentCache;
+
+    /**
+     * 学习计划缓存命中统计
+     */
+    @GetMapping("/plan-cache")
+    public ApiResponse<Map<String, Object>> getPlanCacheStats() {
+        return ApiResponse.success(planResultCache.getStats());
+    }
+
+    /**
+     * 异步计划生成任务队列统计
+     */
+    @GetMapping("/plan-jobs")
+    public ApiResponse<Map<String, Object>> getPlanJobStats() {
+        return ApiResponse.success(planJobService.getStats());
+    }
+
+    /**
+     * 相同LLM请求合并统计（savedCalls 即节省的上游调用次数）
+     */
+    @GetMapping("/llm-coalescing")
+    public ApiResponse<Map<String, Object>> getCoalescingStats() {
+        return ApiResponse.success(requestCoalescer.getStats());
+    }
+
+    /**
+     * 计划生成 max_tokens 预算（各模型每天的输出token估计）
+     */
+    @GetMapping("/llm-token-budget")
+    public ApiResponse<Map<String, Object>> getTokenBudgetStats() {
+        return ApiResponse.success(tokenBudget.getStats());
+    }
+
+    /**
+     * LLM HTTP客户端排队数、在途数与连接池状态（系统/访客分开统计）
+     */
+    @GetMapping("/llm-http")
+    public ApiResponse<Map<String, Object>> getHttpClientStats() {
+        return ApiResponse.success(httpClients.getStats());
+    }
+
+    /**
+     * 各 (baseUrl, model) 的熔断状态
+     */
+    @GetMapping("/llm-circuit")
+    public ApiResponse<Map<String, Object>> getCircuitBreakerStats() {
+        return ApiResponse.success(circuitBreaker.getStats());
+    }
+
+    /**
+     * 对冲请求统计（对冲次数、对冲胜出次数与各模型的对冲延迟）
+     */
+    @GetMapping("/llm-hedging")
+    public ApiResponse<Map<String, Object>> getHedgingStats() {
+        return ApiResponse.success(hedgingPolicy.getStats());
+    }
+
+    /**
+     * LLM接口准入控制统计（可用名额、排队数与各类拒绝次数）
+     */
+    @GetMapping("/llm-admission")
+    public ApiResponse<Map<String, Object>> getAdmissionStats() {
+        return ApiResponse.success(admissionLimiter.getStats());
+    }
+
+    /**
+     * 外部I/O执行器统计（各类任务的活跃数、取消数与虚拟线程固定次数）
+     */
+    @GetMapping("/outbound-io")
+    public ApiResponse<Map<String, Object>> getOutboundIoStats() {
+        return ApiResponse.success(outboundIoExecutor.getStats());
+    }
+
+    /**
+     * 对话上下文压缩统计（压缩次数、摘要调用次数与节省的估算token数）
+     */
+    @GetMapping("/llm-context")
+    public ApiResponse<Map<String, Object>> getChatContextStats() {
+        return ApiResponse.success(contextManager.getStats());
+    }
+
+    /**
+     * 推理模型统计（被过滤的推理token数、首个回答token耗时与流总耗时）
+     */
+    @GetMapping("/llm-reasoning")
+    public ApiResponse<Map<String, Object>> getReasoningStats() {
+        return ApiResponse.success(reasoningStats.getStats());
+    }
+
+    /**
+     * 单轮问答语义缓存统计（精确/相似命中数、命中率与各模型的条目数）
+     */
+    @GetMapping("/llm-answer-cache")
+    public ApiResponse<Map<String, Object>> getAnswerCacheStats() {
+        return ApiResponse.success(answerCache.getStats());
+    }
+
+    /**
+     * LLM流量录制/回放统计（模式、录制数、回放数与未命中数）
+     */
+    @GetMapping("/llm-record-replay")
+    public ApiResponse<Map<String, Object>> getRecordReplayStats() {
+        return ApiResponse.success(recordReplayInterceptor.getStats());
+    }
+
+    /**
+     * LLM调用指标：按模型、服务商、接口和结果分组的耗时与首字节耗时直方图、token用量和生成速度，
+     * 以及按模型汇总的错误率与分位数
+     */
+    @GetMapping("/llm")
+    public ApiResponse<Map<String, Object>> getLlmStats() {
+        return ApiResponse.success(llmMetrics.getStats());
+    }
+
+    /**
+     * 计划生成模型路由统计（各模型的观测样本、错误率、长JSON完整率、预测耗时与路由次数）
+     */
+    @GetMapping("/llm-routing")
+    public ApiResponse<Map<String, Object>> getRoutingStats() {
+        return ApiResponse.success(modelRouter.getStats());
+    }
+
+    /**
+     * 计划状态流转统计（打卡事件和夜间任务分别完成/过期的计划数、上次任务时间）
+     */
+    @GetMapping("/plan-status")
+    public ApiResponse<Map<String, Object>> getPlanStatusStats() {
+        return ApiResponse.success(planStatusService.getStats());
+    }
+
+    /**
+     * 计划内容缓存统计（内容与完成状态位图的命中率、缓存的计划数和字符数、淘汰与失效次数）
+     */
+    @GetMapping("/plan-content-cache")
+    public ApiResponse<Map<String, Object>> getPlanContentCacheStats() {
+        return ApiResponse.success(planContentCache.getStats());
+    }
+}
@@ -1,20 +1,32 @@
 package com.studyplanner.controller;
 
 import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.config.LLMAdmissionInterceptor;
 import com.studyplanner.dto.ApiResponse;
+import com.studyplanner.dto.PlanDetailWindow;
 import com.studyplanner.dto.PlanGenerateRequest;
+import com.studyplanner.dto.PlanJob;
 import com.studyplanner.entity.PlanDetail;
 import com.studyplanner.entity.StudyPlan;
 import com.studyplanner.service.LLMService;
+import com.studyplanner.service.OutboundIoExecutor;
+import com.studyplanner.service.PlanJobService;
 import com.studyplanner.service.PlanService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpSession;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 学习计划控制器
@@ -29,6 +41,18 @@ public class PlanController {
     @Autowired
     private LLMService llmService;
 
+    @Autowired
+    private PlanJobService planJobService;
+
+    @Autowired
+    private OutboundIoExecutor outboundIoExecutor;
+
+    @Value("${llm.stream.timeout-ms:300000}")
+    private Long streamTimeoutMs;
+
+    @Value("${llm.async.plan-timeout-ms:300000}")
+    private Long planTimeoutMs;
+
     /**
      * 获取可用的模型列表（登录用户）
      */
@@ -46,47 +70,115 @@ public class PlanController {
 
     /**
      * 生成学习计划（登录用户 - 使用系统API配置）
+     * 异步处理：生成在外部I/O执行器中进行，不占用请求线程，超时后取消生成
      */
     @PostMapping("/generate")
-    public ApiResponse<StudyPlan> generatePlan(@Valid @RequestBody PlanGenerateRequest request, HttpSession session) {
+    public DeferredResult<ApiResponse<StudyPlan>> generatePlan(@Valid @RequestBody PlanGenerateRequest request,
+                                                               HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return DeferredResults.completed(ApiResponse.unauthorized("请先登录"));
+        }
+
+        return DeferredResults.of(
+                outboundIoExecutor.submit("llm", () -> planService.generatePlan(userId, request)),
+                planTimeoutMs,
+                plan -> ApiResponse.success("计划生成成功", plan),
+                "计划生成失败: ");
+    }
+
+    /**
+     * 异步生成学习计划（登录用户 - 返回任务ID）
+     * 可通过 GET /api/plan/job/{jobId} 轮询，或订阅 /user/queue/plan-jobs 接收完成推送
+     * 准入许可由任务接管，任务结束后才释放，用户的并发上限同样约束排队中的任务
+     */
+    @PostMapping("/generate/async")
+    public ApiResponse<PlanJob> generatePlanAsync(@Valid @RequestBody PlanGenerateRequest request, HttpSession session,
+                                                  HttpServletRequest httpRequest) {
         Long userId = (Long) session.getAttribute("userId");
         if (userId == null) {
             return ApiResponse.unauthorized("请先登录");
         }
 
         try {
-            StudyPlan plan = planService.generatePlan(userId, request);
-            return ApiResponse.success("计划生成成功", plan);
+            PlanJob job = planJobService.submit(userId, request, LLMAdmissionInterceptor.detachPermit(httpRequest));
+            return ApiResponse.success("计划生成任务已提交", job);
+        } catch (RejectedExecutionException e) {
+            return ApiResponse.error(503, "当前生成任务较多，请稍后重试");
+        }
+    }
+
+    /**
+     * 查询异步计划生成任务状态
+     */
+    @GetMapping("/job/{jobId}")
+    public ApiResponse<PlanJob> getPlanJob(@PathVariable String jobId, HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+
+        PlanJob job = planJobService.getJob(jobId, userId);
+        if (job == null) {
+            return ApiResponse.error("任务不存在或已过期");
+        }
+        return ApiResponse.success(job);
+    }
+
+    /**
+     * 流式生成学习计划（登录用户 - SSE推送）
+     * 事件：plan（计划已创建）、title（标题已生成）、day（某天任务已保存）、done（完成，partial 为true时 missingDays 列出缺失的天）、error（失败）
+     */
+    @PostMapping(value = "/generate/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generatePlanStream(@Valid @RequestBody PlanGenerateRequest request, HttpSession session) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            sendErrorAndComplete(emitter, "请先登录");
+            return emitter;
+        }
+
+        try {
+            planService.generatePlanStream(userId, request, emitter);
         } catch (Exception e) {
-            return ApiResponse.error("计划生成失败: " + e.getMessage());
+            sendErrorAndComplete(emitter, "计划生成失败: " + e.getMessage());
+        }
+        return emitter;
+    }
+
+    private void sendErrorAndComplete(SseEmitter emitter, String message) {
+        try {
+            emitter.send(SseEmitter.event().name("error").data(message));
+        } catch (IOException ignored) {
+            // 客户端已断开
         }
+        emitter.complete();
     }
 
     /**
      * 游客体验 - 生成学习计划（使用自定义API配置，不保存）
      */
     @PostMapping("/generate/guest")
-    public ApiResponse<JSONObject> generatePlanForGuest(@RequestBody PlanGenerateRequest request) {
+    public DeferredResult<ApiResponse<JSONObject>> generatePlanForGuest(@RequestBody PlanGenerateRequest request) {
         // 验证必要参数
         if (request.getGoal() == null || request.getGoal().isEmpty()) {
-            return ApiResponse.error("学习目标不能为空");
+            return DeferredResults.completed(ApiResponse.error("学习目标不能为空"));
         }
         if (request.getCustomApiUrl() == null || request.getCustomApiUrl().isEmpty()) {
-            return ApiResponse.error("API URL不能为空");
+            return DeferredResults.completed(ApiResponse.error("API URL不能为空"));
         }
         if (request.getCustomApiKey() == null || request.getCustomApiKey().isEmpty()) {
-            return ApiResponse.error("API Key不能为空");
+            return DeferredResults.completed(ApiResponse.error("API Key不能为空"));
         }
         if (request.getModelName() == null || request.getModelName().isEmpty()) {
-            return ApiResponse.error("模型名称不能为空");
+            return DeferredResults.completed(ApiResponse.error("模型名称不能为空"));
         }
 
-        try {
-            JSONObject plan = planService.generatePlanForGuest(request);
-            return ApiResponse.success("计划生成成功（游客预览）", plan);
-        } catch (Exception e) {
-            return ApiResponse.error("计划生成失败: " + e.getMessage());
-        }
+        return DeferredResults.of(
+                outboundIoExecutor.submit("llm", () -> planService.generatePlanForGuest(request)),
+                planTimeoutMs,
+                plan -> ApiResponse.success("计划生成成功（游客预览）", plan),
+                "计划生成失败: ");
     }
 
     /**
@@ -138,7 +230,7 @@ public class PlanController {
         }
 
         List<PlanDetail> details = planService.getPlanDetails(id);
-        double progress = planService.getPlanProgress(id);
+        double progress = planService.getPlanProgress(plan);
 
         Map<String, Object> result = new HashMap<>();
         result.put("plan", plan);
@@ -148,6 +240,30 @@ public class PlanController {
         return ApiResponse.success(result);
     }
 
+    /**
+     * 分页获取计划及每日任务
+     * 不传 after 时返回今天附近的任务，之后用返回的 nextCursor 作为 after 继续获取；
+     * summary=true 时不返回 content 和 resources，适合长计划的目录展示
+     */
+    @GetMapping("/{id}/details")
+    public ApiResponse<PlanDetailWindow> getPlanDetailWindow(@PathVariable Long id,
+            @RequestParam(required = false) Integer after,
+            @RequestParam(required = false) Integer before,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(defaultValue = "false") boolean summary,
+            HttpSession session) {
+        Long userId = (Long) session.getAttribute("userId");
+        if (userId == null) {
+            return ApiResponse.unauthorized("请先登录");
+        }
+
+        try {
+            return ApiResponse.success(planService.getPlanWindow(id, userId, after, before, limit, summary));
+        } catch (RuntimeException e) {
+            return ApiResponse.error(e.getMessage());
+        }
+    }
+
     /**
      * 获取今日任务
      */
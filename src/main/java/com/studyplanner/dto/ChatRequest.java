@@ -9,6 +9,11 @@ public class ChatRequest {
     private String customApiKey;
     private String customModel;
     
+    /**
+     * 会话ID（可选），用于服务端缓存较早对话的滚动摘要
+     */
+    private String conversationId;
+    
     public static class ChatMessage {
         private String role;
         private String content;
@@ -69,4 +74,12 @@ public class ChatRequest {
     public void setCustomModel(String customModel) {
         this.customModel = customModel;
     }
+    
+    public String getConversationId() {
+        return conversationId;
+    }
+    
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
 }
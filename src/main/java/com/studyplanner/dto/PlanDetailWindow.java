@@ -0,0 +1,47 @@
+package com.studyplanner.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 计划及一段每日任务（按 day_number 的键集分页）
+ */
+@Data
+public class PlanDetailWindow {
+
+    /**
+     * 计划ID（MyBatis 合并结果行使用）
+     */
+    @JsonIgnore
+    private Long planId;
+
+    /**
+     * 计划信息
+     */
+    private StudyPlan plan;
+
+    /**
+     * 本页的每日任务，按天数升序；摘要模式下不含 content 和 resources
+     */
+    private List<PlanDetail> details = new ArrayList<>();
+
+    /**
+     * 计划进度(百分比)
+     */
+    private Double progress;
+
+    /**
+     * 是否还有后续任务
+     */
+    private Boolean hasMore;
+
+    /**
+     * 下一页的游标（本页最后一天的 day_number），没有后续任务时为null
+     */
+    private Integer nextCursor;
+}
@@ -54,4 +54,9 @@ public class PlanGenerateRequest {
      * 语言设置（zh-CN 或 en-US），用于生成对应语言的提示词
      */
     private String language;
+    
+    /**
+     * 是否跳过计划缓存（为true时强制重新调用LLM生成）
+     */
+    private Boolean skipCache;
 }
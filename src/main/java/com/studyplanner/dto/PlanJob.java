@@ -0,0 +1,71 @@
+package com.studyplanner.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.studyplanner.entity.StudyPlan;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 异步计划生成任务
+ * 由工作线程更新、请求线程读取，可变字段均为 volatile；状态最后写入，读到结束状态时结果与结束时间已可见
+ */
+@Data
+public class PlanJob {
+
+    /**
+     * 任务状态
+     */
+    public enum Status {
+        PENDING,    // 排队中
+        RUNNING,    // 生成中
+        SUCCEEDED,  // 已完成
+        FAILED      // 失败
+    }
+
+    /**
+     * 任务ID
+     */
+    private String jobId;
+
+    /**
+     * 提交任务的用户ID
+     */
+    @JsonIgnore
+    private Long userId;
+
+    /**
+     * 任务状态
+     */
+    private volatile Status status;
+
+    /**
+     * 生成成功后的计划
+     */
+    private volatile StudyPlan plan;
+
+    /**
+     * 失败原因
+     */
+    private volatile String error;
+
+    /**
+     * 提交时间
+     */
+    private LocalDateTime createTime;
+
+    /**
+     * 开始执行时间
+     */
+    private volatile LocalDateTime startTime;
+
+    /**
+     * 结束时间
+     */
+    private volatile LocalDateTime finishTime;
+
+    @JsonIgnore
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+}
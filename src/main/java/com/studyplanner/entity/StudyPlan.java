@@ -57,10 +57,20 @@ public class StudyPlan {
     private LocalDate endDate;
 
     /**
-     * 状态(进行中/已完成/已放弃)
+     * 状态(进行中/已完成/已放弃/已过期)
      */
     private String status;
 
+    /**
+     * 每日任务总数
+     */
+    private Integer totalDetails;
+
+    /**
+     * 已完成的任务数（打卡时累加）
+     */
+    private Integer completedDays;
+
     /**
      * 创建时间
      */
@@ -0,0 +1,30 @@
+package com.studyplanner.event;
+
+/**
+ * 打卡事件：某个计划的一天任务首次被标记为完成
+ * 在打卡事务内发布，监听方在事务提交后处理
+ */
+public class PlanCheckedInEvent {
+
+    private final Long planId;
+    private final Long userId;
+    private final Long detailId;
+
+    public PlanCheckedInEvent(Long planId, Long userId, Long detailId) {
+        this.planId = planId;
+        this.userId = userId;
+        this.detailId = detailId;
+    }
+
+    public Long getPlanId() {
+        return planId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public Long getDetailId() {
+        return detailId;
+    }
+}
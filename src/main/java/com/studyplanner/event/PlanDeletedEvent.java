@@ -0,0 +1,24 @@
+package com.studyplanner.event;
+
+/**
+ * 计划删除事件
+ * 在删除事务内发布，监听方在事务提交后处理
+ */
+public class PlanDeletedEvent {
+
+    private final Long planId;
+    private final Long userId;
+
+    public PlanDeletedEvent(Long planId, Long userId) {
+        this.planId = planId;
+        this.userId = userId;
+    }
+
+    public Long getPlanId() {
+        return planId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+}
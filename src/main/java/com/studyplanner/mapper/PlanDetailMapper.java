@@ -29,7 +29,8 @@ public interface PlanDetailMapper {
     PlanDetail findByPlanIdAndDay(@Param("planId") Long planId, @Param("dayNumber") Integer dayNumber);
     
     /**
-     * 批量插入任务
+     * 批量插入任务（多行 VALUES，见 mapper/PlanDetailMapper.xml）
+     * 单条语句的大小受 max_allowed_packet 限制，大计划需由调用方分块
      */
     int batchInsert(List<PlanDetail> details);
     
@@ -47,12 +48,24 @@ public interface PlanDetailMapper {
     @Update("UPDATE plan_detail SET is_completed = #{isCompleted} WHERE id = #{id}")
     int updateCompleted(@Param("id") Long id, @Param("isCompleted") Integer isCompleted);
     
+    /**
+     * 将任务标记为已完成，仅在原先未完成时生效（返回值为0表示已完成过或不属于该计划）
+     */
+    @Update("UPDATE plan_detail SET is_completed = 1 WHERE id = #{id} AND plan_id = #{planId} AND is_completed = 0")
+    int markCompleted(@Param("id") Long id, @Param("planId") Long planId);
+    
     /**
      * 根据计划ID删除所有任务
      */
     @Delete("DELETE FROM plan_detail WHERE plan_id = #{planId}")
     int deleteByPlanId(Long planId);
     
+    /**
+     * 查询计划中已完成任务的ID
+     */
+    @Select("SELECT id FROM plan_detail WHERE plan_id = #{planId} AND is_completed = 1")
+    List<Long> findCompletedIds(Long planId);
+    
     /**
      * 统计计划完成的任务数
      */
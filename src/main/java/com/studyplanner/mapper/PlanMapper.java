@@ -1,7 +1,9 @@
 package com.studyplanner.mapper;
 
+import com.studyplanner.dto.PlanDetailWindow;
 import com.studyplanner.entity.StudyPlan;
 import org.apache.ibatis.annotations.*;
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -16,6 +18,16 @@ public interface PlanMapper {
     @Select("SELECT * FROM study_plan WHERE id = #{id}")
     StudyPlan findById(Long id);
 
+    /**
+     * 查询计划及一段每日任务（见 mapper/PlanMapper.xml）
+     *
+     * @param after  从该天之后开始；为null时从今天往前 before 天开始
+     * @param fetch  最多返回的任务数
+     */
+    PlanDetailWindow findPlanWindow(@Param("planId") Long planId, @Param("after") Integer after,
+                                    @Param("before") int before, @Param("fetch") int fetch,
+                                    @Param("summary") boolean summary);
+
     /**
      * 查询用户的所有计划
      */
@@ -55,6 +67,38 @@ public interface PlanMapper {
     @Update("UPDATE study_plan SET status = #{status}, update_time = NOW() WHERE id = #{id}")
     int updateStatus(@Param("id") Long id, @Param("status") String status);
 
+    /**
+     * 增加计划的任务总数（写入每日任务后调用）
+     */
+    @Update("UPDATE study_plan SET total_details = total_details + #{count} WHERE id = #{id}")
+    int addTotalDetails(@Param("id") Long id, @Param("count") int count);
+
+    /**
+     * 完成任务数加一
+     */
+    @Update("UPDATE study_plan SET completed_days = completed_days + 1, update_time = NOW() WHERE id = #{id}")
+    int incrementCompletedDays(Long id);
+
+    /**
+     * 计划的任务全部完成时更新为"已完成"（打卡事件触发）
+     */
+    @Update("UPDATE study_plan SET status = '已完成', update_time = NOW() "
+            + "WHERE id = #{id} AND status IN ('进行中', '已过期') AND total_details > 0 AND completed_days >= total_details")
+    int completeIfFinished(Long id);
+
+    /**
+     * 批量把任务全部完成的计划更新为"已完成"（夜间任务）
+     */
+    @Update("UPDATE study_plan SET status = '已完成', update_time = NOW() "
+            + "WHERE status IN ('进行中', '已过期') AND total_details > 0 AND completed_days >= total_details")
+    int completeFinishedPlans();
+
+    /**
+     * 批量把结束日期早于指定日期且仍在进行中的计划更新为"已过期"（夜间任务）
+     */
+    @Update("UPDATE study_plan SET status = '已过期', update_time = NOW() WHERE status = '进行中' AND end_date < #{before}")
+    int expirePlans(@Param("before") LocalDate before);
+
     /**
      * 删除计划
      */
@@ -1,9 +1,12 @@
 package com.studyplanner.service;
 
 import com.studyplanner.entity.CheckIn;
+import com.studyplanner.event.PlanCheckedInEvent;
 import com.studyplanner.mapper.CheckInMapper;
 import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,11 +28,14 @@ public class CheckInService {
     @Autowired
     private PlanDetailMapper planDetailMapper;
     
+    @Autowired
+    private PlanMapper planMapper;
+    
     @Autowired(required = false)
     private PlanReminderService planReminderService;
     
     @Autowired
-    private PlanService planService;
+    private ApplicationEventPublisher eventPublisher;
     
     /**
      * 打卡签到
@@ -44,11 +50,11 @@ public class CheckInService {
         // 保存打卡记录
         checkInMapper.insert(checkIn);
         
-        // 更新任务完成状态
-        planDetailMapper.updateCompleted(checkIn.getDetailId(), 1);
-        
-        // 检查计划进度，如果达到100%则自动更新状态为"已完成"
-        checkAndUpdatePlanStatus(checkIn.getPlanId());
+        // 更新任务完成状态；首次完成时累加计划的完成数，计划状态在事务提交后由 PlanStatusService 处理
+        if (planDetailMapper.markCompleted(checkIn.getDetailId(), checkIn.getPlanId()) > 0) {
+            planMapper.incrementCompletedDays(checkIn.getPlanId());
+            eventPublisher.publishEvent(new PlanCheckedInEvent(checkIn.getPlanId(), checkIn.getUserId(), checkIn.getDetailId()));
+        }
         
         // 清除该计划的提醒记录（因为用户已经打卡了）
         if (planReminderService != null) {
@@ -58,21 +64,6 @@ public class CheckInService {
         return checkIn;
     }
     
-    /**
-     * 检查计划进度并自动更新状态
-     */
-    private void checkAndUpdatePlanStatus(Long planId) {
-        try {
-            double progress = planService.getPlanProgress(planId);
-            if (progress >= 100.0) {
-                planService.updatePlanStatus(planId, "已完成");
-                System.out.println("计划 " + planId + " 进度达到100%，已自动更新状态为'已完成'");
-            }
-        } catch (Exception e) {
-            System.err.println("检查计划状态失败: " + planId + ", " + e.getMessage());
-        }
-    }
-    
     /**
      * 获取今日打卡状态
      */
@@ -18,8 +18,12 @@ public class EmailService {
     @Value("${spring.mail.username:}")
     private String fromEmail;
     
+    @Autowired
+    private OutboundIoExecutor outboundIoExecutor;
+    
     /**
      * 发送简单文本邮件
+     * SMTP发送在外部I/O执行器中进行，不占用调用线程（如定时任务线程）
      */
     public void sendSimpleEmail(String to, String subject, String text) {
         if (mailSender == null || fromEmail == null || fromEmail.isEmpty()) {
@@ -27,19 +31,23 @@ public class EmailService {
             return;
         }
         
-        try {
-            SimpleMailMessage message = new SimpleMailMessage();
-            message.setFrom(fromEmail);
-            message.setTo(to);
-            message.setSubject(subject);
-            message.setText(text);
-            
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(fromEmail);
+        message.setTo(to);
+        message.setSubject(subject);
+        message.setText(text);
+        
+        outboundIoExecutor.submit("smtp", () -> {
             mailSender.send(message);
-            System.out.println("邮件发送成功: " + to);
-        } catch (Exception e) {
-            System.err.println("邮件发送失败: " + e.getMessage());
-            e.printStackTrace();
-        }
+            return null;
+        }).whenComplete((result, e) -> {
+            if (e == null) {
+                System.out.println("邮件发送成功: " + to);
+            } else {
+                System.err.println("邮件发送失败: " + e.getMessage());
+                e.printStackTrace();
+            }
+        });
     }
     
     /**
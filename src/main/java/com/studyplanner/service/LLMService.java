@@ -3,14 +3,49 @@ package com.studyplanner.service;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.service.llm.ChatContextManager;
+import com.studyplanner.service.llm.LLMCircuitBreaker;
+import com.studyplanner.service.llm.LLMCompletion;
+import com.studyplanner.service.llm.LLMHedgingPolicy;
+import com.studyplanner.service.llm.LLMHttpClients;
+import com.studyplanner.service.llm.LLMMetrics;
+import com.studyplanner.service.llm.LLMModelRouter;
+import com.studyplanner.service.llm.LLMReasoningStats;
+import com.studyplanner.service.llm.LLMRequestCoalescer;
+import com.studyplanner.service.llm.LLMStreamListener;
+import com.studyplanner.service.llm.LLMUnavailableException;
+import com.studyplanner.service.llm.PlanJsonSupport;
+import com.studyplanner.service.llm.PlanResultCache;
+import com.studyplanner.service.llm.PlanStreamParser;
+import com.studyplanner.service.llm.PlanTokenBudget;
+import com.studyplanner.service.llm.ReasoningFilter;
+import com.studyplanner.service.llm.SemanticAnswerCache;
 import okhttp3.*;
+import okio.BufferedSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 /**
  * LLM服务类 - 用于调用大语言模型API
@@ -42,11 +77,83 @@ public class LLMService {
     @Value("${llm.api.available-models:Qwen/Qwen3-8B,THUDM/GLM-4-9B-0414,deepseek-ai/DeepSeek-V3}")
     private String availableModelsConfig;
     
-    private final OkHttpClient client = new OkHttpClient.Builder()
-            .connectTimeout(60, TimeUnit.SECONDS)
-            .readTimeout(120, TimeUnit.SECONDS)
-            .writeTimeout(60, TimeUnit.SECONDS)
-            .build();
+    @Autowired
+    private PlanResultCache planResultCache;
+    
+    @Autowired
+    private LLMRequestCoalescer requestCoalescer;
+    
+    @Autowired
+    @Qualifier("llmExecutor")
+    private ExecutorService llmExecutor;
+    
+    // 长计划分段并行生成配置
+    @Value("${llm.segmented.enabled:true}")
+    private Boolean segmentedEnabled;
+    
+    @Value("${llm.segmented.threshold-days:60}")
+    private Integer segmentThresholdDays;
+    
+    @Value("${llm.segmented.segment-days:14}")
+    private Integer segmentDays;
+    
+    @Value("${llm.segmented.max-parallelism:4}")
+    private Integer segmentParallelism;
+    
+    // 是否使用紧凑的数组格式输出每日计划（服务端展开为标准格式）
+    @Value("${llm.plan.compact-schema:true}")
+    private Boolean compactSchema;
+    
+    @Autowired
+    private PlanTokenBudget tokenBudget;
+    
+    // 模拟模式与缓存命中时流式回放的分块大小
+    private static final int REPLAY_CHUNK = 64;
+    
+    // 截断续写配置
+    // 对冲请求等待结果的上限：系统客户端的连接、写入与读取超时之和
+    @Value("${llm.http.system.connect-timeout-seconds:10}")
+    private long systemConnectTimeout;
+    
+    @Value("${llm.http.system.write-timeout-seconds:30}")
+    private long systemWriteTimeout;
+    
+    @Value("${llm.http.system.read-timeout-seconds:120}")
+    private long systemReadTimeout;
+    
+    @Value("${llm.continuation.max-requests:4}")
+    private Integer continuationMaxRequests;
+    
+    @Value("${llm.continuation.chunk-days:30}")
+    private Integer continuationChunkDays;
+    
+    // 长计划阶段大纲的 max_tokens
+    private static final int OUTLINE_MAX_TOKENS = 2048;
+    
+    // 系统服务商与访客自定义API使用各自独立配置的HTTP客户端
+    @Autowired
+    private LLMHttpClients httpClients;
+    
+    @Autowired
+    private LLMCircuitBreaker circuitBreaker;
+    
+    @Autowired
+    private LLMHedgingPolicy hedgingPolicy;
+    
+    // 推理模型（如 DeepSeek-R1）的思考过程在返回前过滤掉
+    @Autowired
+    private LLMReasoningStats reasoningStats;
+    
+    @Autowired
+    private SemanticAnswerCache answerCache;
+    
+    // 按模型、服务商、接口和结果统计耗时与token用量
+    @Autowired
+    private LLMMetrics llmMetrics;
+    
+    // 路由模式下按实时耗时、错误率和请求规模为计划生成选择模型
+    @Autowired
+    private LLMModelRouter modelRouter;
     
     /**
      * 获取可用的模型列表
@@ -66,13 +173,77 @@ public class LLMService {
      * 生成学习计划（使用系统默认配置 - 登录用户）
      */
     public String generateStudyPlan(String goal, String level, double dailyHours, int totalDays, String modelName, String language) {
+        return generateStudyPlan(goal, level, dailyHours, totalDays, modelName, language, true);
+    }
+    
+    /**
+     * 生成学习计划（使用系统默认配置 - 登录用户）
+     * useCache为true时优先返回相同参数的缓存结果，命中则不再调用LLM
+     */
+    public String generateStudyPlan(String goal, String level, double dailyHours, int totalDays, String modelName,
+                                    String language, boolean useCache) {
         if (mockMode) {
             return generateMockPlan(goal, level, dailyHours, totalDays);
         }
         
         String useModel = (modelName != null && !modelName.isEmpty()) ? modelName : defaultModel;
-        String prompt = buildPlanPrompt(goal, level, dailyHours, totalDays, language);
-        return chat(prompt, defaultBaseUrl, defaultApiKey, useModel);
+        String cacheKey = planCacheKey(goal, level, dailyHours, totalDays, useModel, language);
+        if (useCache) {
+            String cached = planResultCache.get(cacheKey);
+            if (cached != null) {
+                return PlanJsonSupport.expandPlan(cached);
+            }
+        }
+        // 缓存键使用请求的模型，路由结果不同不影响命中
+        if (modelRouter.shouldRoute(modelName)) {
+            useModel = routePlanModel(useModel, totalDays, resolveEnglish(goal, level, language));
+        }
+        
+        String result;
+        try {
+            result = generatePlanText(goal, level, dailyHours, totalDays, defaultBaseUrl, defaultApiKey, useModel, language);
+        } catch (LLMUnavailableException e) {
+            return PlanJsonSupport.expandPlan(degradedPlan(cacheKey, goal, e));
+        }
+        cacheIfComplete(cacheKey, result);
+        return PlanJsonSupport.expandPlan(result);
+    }
+    
+    /**
+     * 在 available-models 中为计划生成选择模型（熔断中的模型不参与）
+     * 分段生成时按每段的规模和依次进行的轮数估计耗时
+     */
+    private String routePlanModel(String fallback, int totalDays, boolean english) {
+        List<String> candidates = new ArrayList<>();
+        for (String available : getAvailableModels()) {
+            String candidate = available.trim();
+            if (!circuitBreaker.isOpen(defaultBaseUrl, candidate)) {
+                candidates.add(candidate);
+            }
+        }
+        
+        int callDays = totalDays;
+        int rounds = 1;
+        if (segmentedEnabled && totalDays >= segmentThresholdDays) {
+            int segments = (totalDays + segmentDays - 1) / segmentDays;
+            callDays = segmentDays;
+            // 大纲请求 + 分段并行的轮数
+            rounds = 1 + (segments + segmentParallelism - 1) / segmentParallelism;
+        }
+        return modelRouter.route(candidates, fallback, totalDays, modelRouter.units(callDays, english), rounds);
+    }
+    
+    /**
+     * 降级计划：所有模型均被熔断时，返回相同参数的缓存结果（即使请求要求跳过缓存）；
+     * 没有缓存时抛出原异常，由调用方返回503，不能把模拟计划当作真实结果保存或返回
+     */
+    private String degradedPlan(String cacheKey, String goal, LLMUnavailableException e) {
+        String cached = planResultCache.get(cacheKey);
+        if (cached == null) {
+            throw e;
+        }
+        System.err.println("LLM服务熔断中，返回缓存计划: " + goal);
+        return cached;
     }
     
     /**
@@ -91,8 +262,353 @@ public class LLMService {
             throw new IllegalArgumentException("模型名称不能为空");
         }
         
+        return PlanJsonSupport.expandPlan(
+                generatePlanText(goal, level, dailyHours, totalDays, customBaseUrl, customApiKey, customModel, language));
+    }
+    
+    /**
+     * 调用LLM生成计划文本
+     * 达到分段阈值的长计划先生成阶段大纲，再按段并行生成每日任务；
+     * 响应被截断或缺少部分天数时，仅针对缺失的天数发起续写请求
+     */
+    private String generatePlanText(String goal, String level, double dailyHours, int totalDays,
+                                    String baseUrl, String apiKey, String model, String language) {
+        if (segmentedEnabled && totalDays >= segmentThresholdDays) {
+            return generateSegmentedPlan(goal, level, dailyHours, totalDays, baseUrl, apiKey, model, language);
+        }
+        boolean english = resolveEnglish(goal, level, language);
         String prompt = buildPlanPrompt(goal, level, dailyHours, totalDays, language);
-        return chat(prompt, customBaseUrl, customApiKey, customModel);
+        String content = completePlanDays(prompt, baseUrl, apiKey, model, totalDays, english);
+        
+        PlanStreamParser parser = new PlanStreamParser();
+        Map<Integer, JSONObject> days = collectDays(parser.feed(content), 1, totalDays);
+        if (days.size() == totalDays) {
+            return content;
+        }
+        
+        String title = parser.getTitle();
+        String summary = parser.getSummary();
+        fillMissingDays(days, 1, totalDays, range -> buildContinuationPrompt(range, goal, level, dailyHours, totalDays,
+                title, summary, previousDayContent(days, range.startDay), english), baseUrl, apiKey, model, english);
+        if (days.isEmpty()) {
+            throw new RuntimeException("未能从LLM响应中解析出每日任务");
+        }
+        return buildPlanJson(title, summary, days);
+    }
+    
+    /**
+     * 续写缺失的天数（使用系统默认配置 - 登录用户）
+     * 用于流式生成结束后仍有天数缺失的情况，返回补全得到的单日计划
+     */
+    public List<JSONObject> continueStudyPlan(String goal, String level, double dailyHours, int totalDays, String modelName,
+                                              String language, String title, String summary,
+                                              Map<Integer, JSONObject> existingDays) {
+        String useModel = (modelName != null && !modelName.isEmpty()) ? modelName : defaultModel;
+        boolean english = resolveEnglish(goal, level, language);
+        
+        Map<Integer, JSONObject> days = new TreeMap<>(existingDays);
+        fillMissingDays(days, 1, totalDays, range -> buildContinuationPrompt(range, goal, level, dailyHours, totalDays,
+                title, summary, previousDayContent(days, range.startDay), english), defaultBaseUrl, defaultApiKey, useModel,
+                english);
+        
+        List<JSONObject> added = new ArrayList<>();
+        days.forEach((day, plan) -> {
+            if (!existingDays.containsKey(day)) {
+                added.add(plan);
+            }
+        });
+        return added;
+    }
+    
+    /**
+     * 对 [fromDay, toDay] 中缺失的天数逐段发起续写请求，结果直接并入days
+     * 每次请求最多覆盖 chunk-days 天，总请求数不超过 max-requests；某次续写没有任何进展时停止
+     */
+    private void fillMissingDays(Map<Integer, JSONObject> days, int fromDay, int toDay,
+                                 Function<PlanSegment, String> promptForRange,
+                                 String baseUrl, String apiKey, String model, boolean english) {
+        for (int request = 0; request < continuationMaxRequests; request++) {
+            PlanSegment range = firstMissingRange(days, fromDay, toDay);
+            if (range == null) {
+                return;
+            }
+            
+            int rangeLength = range.endDay - range.startDay + 1;
+            String content = completePlanDays(promptForRange.apply(range), baseUrl, apiKey, model, rangeLength, english);
+            Map<Integer, JSONObject> continued = collectDays(new PlanStreamParser().feed(content), range.startDay, range.endDay);
+            if (continued.isEmpty()) {
+                System.err.println("续写第" + range.startDay + "-" + range.endDay + "天未解析出任务，停止续写");
+                return;
+            }
+            continued.forEach(days::putIfAbsent);
+        }
+        if (firstMissingRange(days, fromDay, toDay) != null) {
+            System.err.println("续写次数已达上限，计划仍有缺失天数");
+        }
+    }
+    
+    /**
+     * 找到第一段连续缺失的天数（长度不超过 chunk-days），没有缺失时返回null
+     */
+    private PlanSegment firstMissingRange(Map<Integer, JSONObject> days, int fromDay, int toDay) {
+        int start = fromDay;
+        while (start <= toDay && days.containsKey(start)) {
+            start++;
+        }
+        if (start > toDay) {
+            return null;
+        }
+        int end = start;
+        while (end < toDay && !days.containsKey(end + 1) && end - start + 1 < continuationChunkDays) {
+            end++;
+        }
+        return new PlanSegment(start, end, "");
+    }
+    
+    /**
+     * 将解析出的元素转换为单日计划，按天数去重并过滤掉范围之外的天
+     */
+    private Map<Integer, JSONObject> collectDays(List<String> elements, int fromDay, int toDay) {
+        Map<Integer, JSONObject> days = new TreeMap<>();
+        for (String element : elements) {
+            JSONObject day;
+            try {
+                day = PlanJsonSupport.toDayObject(element);
+            } catch (RuntimeException e) {
+                // 单个元素格式错误不影响其他天
+                continue;
+            }
+            int dayNumber = day.getIntValue("day");
+            if (dayNumber >= fromDay && dayNumber <= toDay) {
+                days.putIfAbsent(dayNumber, day);
+            }
+        }
+        return days;
+    }
+    
+    private String previousDayContent(Map<Integer, JSONObject> days, int day) {
+        JSONObject previous = days.get(day - 1);
+        return previous != null ? previous.getString("content") : "";
+    }
+    
+    private String buildPlanJson(String title, String summary, Map<Integer, JSONObject> days) {
+        JSONObject plan = new JSONObject();
+        plan.put("title", title);
+        plan.put("summary", summary);
+        plan.put("dailyPlans", new JSONArray(new ArrayList<>(days.values())));
+        return plan.toJSONString();
+    }
+    
+    /**
+     * 以按天数计算的 max_tokens 预算发起计划生成请求，并把实际用量反馈给预算统计；
+     * 系统配置的调用同时记录到模型路由的观测窗口
+     */
+    private String completePlanDays(String prompt, String baseUrl, String apiKey, String model, int days,
+                                    boolean english) {
+        // 先选定模型（熔断时可能切换到备选模型），失败与成功都记在实际调用的模型上
+        String useModel = selectModel(baseUrl, apiKey, model);
+        Integer budget = tokenBudget.budgetFor(useModel, compactSchema, days);
+        boolean observe = httpClients.isSystem(baseUrl, apiKey);
+        long start = System.currentTimeMillis();
+        LLMCompletion completion;
+        try {
+            completion = completeWith(baseUrl, apiKey, useModel, singleUserMessage(prompt), budget, LLMMetrics.PLAN);
+        } catch (RuntimeException e) {
+            // 请求被取消（线程已中断）时不计入
+            if (observe && !Thread.currentThread().isInterrupted()) {
+                modelRouter.observe(useModel, days, english, System.currentTimeMillis() - start, false, true);
+            }
+            throw e;
+        }
+        
+        String content = completion.getContent();
+        int parsedDays = content != null ? new PlanStreamParser().feed(content).size() : 0;
+        tokenBudget.observe(completion.getModel(), compactSchema, parsedDays, completion.getCompletionTokens(),
+                completion.isTruncated(), budget);
+        if (observe) {
+            modelRouter.observe(completion.getModel(), days, english, System.currentTimeMillis() - start,
+                    parsedDays >= days && !completion.isTruncated(), false);
+        }
+        return content;
+    }
+    
+    /**
+     * 分段并行生成长计划
+     * 1. 请求阶段大纲（标题、概述、各阶段覆盖的天数与重点）
+     * 2. 按阶段边界和分段长度切分，以有限并发度同时生成各段的每日任务
+     * 3. 按天数合并为与单次生成相同格式的计划JSON
+     */
+    private String generateSegmentedPlan(String goal, String level, double dailyHours, int totalDays,
+                                         String baseUrl, String apiKey, String model, String language) {
+        boolean english = resolveEnglish(goal, level, language);
+        
+        String outlineText = complete(baseUrl, apiKey, model,
+                singleUserMessage(buildOutlinePrompt(goal, level, dailyHours, totalDays, english)), OUTLINE_MAX_TOKENS,
+                LLMMetrics.PLAN)
+                .getContent();
+        JSONObject outline = extractJsonObject(outlineText);
+        List<PlanSegment> segments = splitSegments(outline.getJSONArray("phases"), totalDays);
+        String outlineSummary = describeOutline(segments, english);
+        String title = outline.getString("title");
+        
+        ExecutorCompletionService<List<JSONObject>> completionService = new ExecutorCompletionService<>(llmExecutor);
+        List<Future<List<JSONObject>>> futures = new ArrayList<>();
+        Map<Integer, JSONObject> days = new TreeMap<>();
+        int next = 0;
+        int running = 0;
+        
+        try {
+            while (next < segments.size() || running > 0) {
+                // 补足并发窗口
+                while (next < segments.size() && running < segmentParallelism) {
+                    PlanSegment segment = segments.get(next++);
+                    futures.add(completionService.submit(OutboundIoExecutor.withCurrentScope(() -> generateSegment(
+                            segment, goal, level, dailyHours, totalDays, title, outlineSummary, english,
+                            baseUrl, apiKey, model))));
+                    running++;
+                }
+                
+                List<JSONObject> segmentDays = completionService.take().get();
+                running--;
+                for (JSONObject day : segmentDays) {
+                    days.putIfAbsent(day.getIntValue("day"), day);
+                }
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("分段生成计划被中断", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            Throwable cause = e.getCause();
+            if (cause instanceof LLMUnavailableException) {
+                throw (LLMUnavailableException) cause;
+            }
+            throw new RuntimeException("分段生成计划失败: " + cause.getMessage(), cause);
+        }
+        
+        return buildPlanJson(title, outline.getString("summary"), days);
+    }
+    
+    /**
+     * 生成单个分段的每日任务：请求失败时重试一次，分段内缺失的天数再发起续写
+     */
+    private List<JSONObject> generateSegment(PlanSegment segment, String goal, String level, double dailyHours,
+                                             int totalDays, String title, String outlineSummary, boolean english,
+                                             String baseUrl, String apiKey, String model) {
+        Function<PlanSegment, String> promptForRange = range -> buildSegmentPrompt(
+                new PlanSegment(range.startDay, range.endDay, segment.focus),
+                goal, level, dailyHours, totalDays, title, outlineSummary, english);
+        int segmentLength = segment.endDay - segment.startDay + 1;
+        
+        Map<Integer, JSONObject> days = null;
+        RuntimeException lastError = null;
+        for (int attempt = 0; attempt < 2 && days == null; attempt++) {
+            try {
+                String content = completePlanDays(promptForRange.apply(segment), baseUrl, apiKey, model, segmentLength,
+                        english);
+                Map<Integer, JSONObject> parsed = collectDays(new PlanStreamParser().feed(content), segment.startDay, segment.endDay);
+                if (!parsed.isEmpty()) {
+                    days = parsed;
+                } else {
+                    lastError = new RuntimeException("第" + segment.startDay + "-" + segment.endDay + "天未解析出任务");
+                }
+            } catch (RuntimeException e) {
+                lastError = e;
+            }
+        }
+        if (days == null) {
+            throw lastError;
+        }
+        
+        if (days.size() < segmentLength) {
+            fillMissingDays(days, segment.startDay, segment.endDay, promptForRange, baseUrl, apiKey, model, english);
+        }
+        return new ArrayList<>(days.values());
+    }
+    
+    /**
+     * 计划分段（闭区间）
+     */
+    private static class PlanSegment {
+        final int startDay;
+        final int endDay;
+        final String focus;
+        
+        PlanSegment(int startDay, int endDay, String focus) {
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.focus = focus;
+        }
+    }
+    
+    /**
+     * 按大纲阶段切分计划：阶段边界处必然断开，单段不超过 segment-days 天。
+     * 大纲缺失、越界或有空缺的天沿用前一个阶段的重点。
+     */
+    private List<PlanSegment> splitSegments(JSONArray phases, int totalDays) {
+        String[] focusByDay = new String[totalDays + 1];
+        if (phases != null) {
+            for (int i = 0; i < phases.size(); i++) {
+                JSONObject phase = phases.getJSONObject(i);
+                if (phase == null) {
+                    continue;
+                }
+                int start = Math.max(1, phase.getIntValue("startDay"));
+                int end = Math.min(totalDays, phase.getIntValue("endDay"));
+                String focus = phase.getString("focus") != null ? phase.getString("focus") : "";
+                for (int day = start; day <= end; day++) {
+                    focusByDay[day] = focus;
+                }
+            }
+        }
+        
+        List<PlanSegment> segments = new ArrayList<>();
+        int segmentStart = 1;
+        String currentFocus = focusByDay[1] != null ? focusByDay[1] : "";
+        for (int day = 2; day <= totalDays + 1; day++) {
+            String focus = day <= totalDays && focusByDay[day] != null ? focusByDay[day] : currentFocus;
+            boolean boundary = day > totalDays || !focus.equals(currentFocus) || day - segmentStart >= segmentDays;
+            if (boundary) {
+                segments.add(new PlanSegment(segmentStart, day - 1, currentFocus));
+                segmentStart = day;
+                currentFocus = focus;
+            }
+        }
+        return segments;
+    }
+    
+    /**
+     * 将大纲整理为提示词中使用的文字描述（相邻同重点的分段合并显示）
+     */
+    private String describeOutline(List<PlanSegment> segments, boolean english) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < segments.size()) {
+            int j = i;
+            while (j + 1 < segments.size() && segments.get(j + 1).focus.equals(segments.get(i).focus)) {
+                j++;
+            }
+            sb.append(english
+                    ? String.format("Day %d-%d: %s%n", segments.get(i).startDay, segments.get(j).endDay, segments.get(i).focus)
+                    : String.format("第%d-%d天：%s%n", segments.get(i).startDay, segments.get(j).endDay, segments.get(i).focus));
+            i = j + 1;
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * 提取文本中的JSON对象（LLM可能返回额外文字）
+     */
+    private JSONObject extractJsonObject(String text) {
+        String jsonStr = text;
+        int jsonStart = text.indexOf("{");
+        int jsonEnd = text.lastIndexOf("}");
+        if (jsonStart >= 0 && jsonEnd > jsonStart) {
+            jsonStr = text.substring(jsonStart, jsonEnd + 1);
+        }
+        JSONObject result = JSON.parseObject(jsonStr);
+        return result != null ? result : new JSONObject();
     }
     
     /**
@@ -121,162 +637,682 @@ public class LLMService {
     }
     
     /**
-     * AI问答（使用系统配置）
+     * AI问答（使用系统配置），相同或相近的问题直接返回语义缓存中的回答
      */
     public String askQuestion(String question) {
+        String cached = answerCache.get(defaultModel, question);
+        if (cached != null) {
+            return cached;
+        }
         String prompt = "你是一个专业的学习助手，请回答以下问题：\n\n" + question;
-        return chat(prompt, defaultBaseUrl, defaultApiKey, defaultModel);
+        String answer = chat(prompt, defaultBaseUrl, defaultApiKey, defaultModel);
+        answerCache.put(defaultModel, question, answer);
+        return answer;
     }
     
     /**
      * 多轮对话（支持消息列表）
      */
-    public String chat(String baseUrl, String apiKey, String model, java.util.List<java.util.Map<String, String>> messageList) {
+    public String chat(String baseUrl, String apiKey, String model, List<Map<String, String>> messageList) {
+        return complete(baseUrl, apiKey, model, messageList, null, LLMMetrics.CHAT).getContent();
+    }
+    
+    /**
+     * 异步对话：基于OkHttp异步调用，等待响应期间不占用任何线程
+     * 返回的 future 被取消时同时取消上游HTTP调用
+     */
+    public CompletableFuture<String> chatAsync(String baseUrl, String apiKey, String model,
+                                               List<Map<String, String>> messageList) {
+        return chatAsync(baseUrl, apiKey, model, messageList, null, LLMMetrics.CHAT);
+    }
+    
+    /**
+     * 异步对话，可指定本次请求的 max_tokens（为null时使用全局配置）
+     *
+     * @param endpoint 指标中的接口标签（见 LLMMetrics）
+     */
+    public CompletableFuture<String> chatAsync(String baseUrl, String apiKey, String model,
+                                               List<Map<String, String>> messageList, Integer maxTokensOverride,
+                                               String endpoint) {
+        String useModel;
         try {
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("model", model);
-            requestBody.put("max_tokens", maxTokens);
-            requestBody.put("temperature", temperature);
-            
-            JSONArray messages = new JSONArray();
-            for (java.util.Map<String, String> msg : messageList) {
-                JSONObject message = new JSONObject();
-                message.put("role", msg.get("role"));
-                message.put("content", msg.get("content"));
-                messages.add(message);
+            useModel = selectModel(baseUrl, apiKey, model);
+        } catch (LLMUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String body = buildRequestBody(useModel, messageList, false, maxTokensOverride).toJSONString();
+        PendingCall pending = enqueueCompletion(httpClients.clientFor(baseUrl, apiKey),
+                buildRequest(baseUrl, apiKey, body, endpoint), baseUrl, useModel);
+        
+        CompletableFuture<String> result = pending.result.thenApply(LLMCompletion::getContent);
+        result.whenComplete((content, error) -> {
+            if (result.isCancelled()) {
+                pending.call.cancel();
             }
-            requestBody.put("messages", messages);
-            
-            // 确保URL格式正确
-            String url = baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
-            
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .post(RequestBody.create(requestBody.toJSONString(), MediaType.parse("application/json")))
-                    .build();
-            
-            try (Response response = client.newCall(request).execute()) {
-                String responseBody = response.body() != null ? response.body().string() : "";
-                
-                if (!response.isSuccessful()) {
-                    throw new RuntimeException("LLM API调用失败: " + response.code() + " - " + responseBody);
+        });
+        return result;
+    }
+    
+    /**
+     * 非流式调用，返回内容、结束原因与token用量
+     * 相同请求并发到达时合并为一次HTTP调用
+     *
+     * @param maxTokensOverride 本次请求的 max_tokens，为null时使用全局配置
+     * @param endpoint 指标中的接口标签（见 LLMMetrics）
+     */
+    public LLMCompletion complete(String baseUrl, String apiKey, String model, List<Map<String, String>> messageList,
+                                  Integer maxTokensOverride, String endpoint) {
+        return completeWith(baseUrl, apiKey, selectModel(baseUrl, apiKey, model), messageList, maxTokensOverride,
+                endpoint);
+    }
+    
+    /**
+     * 使用已通过 selectModel 选定的模型发起非流式调用
+     */
+    private LLMCompletion completeWith(String baseUrl, String apiKey, String useModel,
+                                       List<Map<String, String>> messageList, Integer maxTokensOverride,
+                                       String endpoint) {
+        JSONObject requestBody = buildRequestBody(useModel, messageList, false, maxTokensOverride);
+        String body = requestBody.toJSONString();
+        Request request = buildRequest(baseUrl, apiKey, body, endpoint);
+        
+        return requestCoalescer.execute(
+                LLMRequestCoalescer.key(baseUrl, apiKey, body),
+                () -> hedgingPolicy.isEnabled() && httpClients.isSystem(baseUrl, apiKey)
+                        ? executeHedged(request, baseUrl, apiKey, useModel, messageList, maxTokensOverride)
+                        : execute(httpClients.clientFor(baseUrl, apiKey), request, baseUrl, useModel));
+    }
+    
+    /**
+     * 选择本次调用的模型：请求的模型被熔断时，系统配置按 available-models 顺序选择第一个未熔断的备选模型
+     * 全部被熔断时立即失败，不再等待超时
+     */
+    private String selectModel(String baseUrl, String apiKey, String model) {
+        LinkedHashSet<String> candidates = new LinkedHashSet<>();
+        candidates.add(model);
+        if (httpClients.isSystem(baseUrl, apiKey)) {
+            for (String available : getAvailableModels()) {
+                candidates.add(available.trim());
+            }
+        }
+        for (String candidate : candidates) {
+            if (circuitBreaker.allowRequest(baseUrl, candidate)) {
+                if (!candidate.equals(model)) {
+                    System.err.println("模型 " + model + " 熔断中，切换到备选模型 " + candidate);
                 }
-                
-                JSONObject jsonResponse = JSON.parseObject(responseBody);
-                
-                return jsonResponse
-                        .getJSONArray("choices")
-                        .getJSONObject(0)
-                        .getJSONObject("message")
-                        .getString("content");
+                return candidate;
             }
+        }
+        throw new LLMUnavailableException("AI服务暂时不可用，请稍后重试");
+    }
+    
+    /**
+     * 执行非流式请求，并向熔断器和调用指标报告结果
+     */
+    private LLMCompletion execute(OkHttpClient client, Request request, String baseUrl, String model) {
+        long start = System.currentTimeMillis();
+        long firstByte = -1;
+        int statusCode = 0;
+        LLMCompletion completion = null;
+        boolean failure = true;
+        Call call = client.newCall(request);
+        // 所在的外部I/O任务被取消时（如请求超时）立即取消HTTP调用
+        OutboundIoExecutor.onCancel(call::cancel);
+        try (Response response = call.execute()) {
+            firstByte = System.currentTimeMillis() - start;
+            statusCode = response.code();
+            failure = !response.isSuccessful() && LLMCircuitBreaker.isProviderFailure(response.code());
+            completion = readCompletion(response, model);
+            return completion;
         } catch (IOException e) {
+            failure = true;
             throw new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e);
+        } finally {
+            long latency = System.currentTimeMillis() - start;
+            // 主动取消的调用不代表服务故障，不计入熔断统计
+            if (call.isCanceled()) {
+                circuitBreaker.release(baseUrl, model);
+            } else {
+                circuitBreaker.record(baseUrl, model, failure, latency);
+            }
+            llmMetrics.record(request, model, statusCode, completion, firstByte, latency, call.isCanceled());
         }
     }
     
     /**
-     * 调用LLM API（通用方法，支持自定义配置）
+     * 解析非流式响应
      */
-    public String chat(String prompt, String baseUrl, String apiKey, String model) {
+    private LLMCompletion readCompletion(Response response, String model) throws IOException {
+        String responseBody = response.body() != null ? response.body().string() : "";
+        
+        if (!response.isSuccessful()) {
+            throw new RuntimeException("LLM API调用失败: " + response.code() + " - " + responseBody);
+        }
+        
+        JSONObject jsonResponse = JSON.parseObject(responseBody);
+        JSONObject choice = jsonResponse.getJSONArray("choices").getJSONObject(0);
+        
+        JSONObject message = choice.getJSONObject("message");
+        ReasoningFilter filter = reasoningStats.newFilter();
+        String content = message.getString("content");
+        if (filter != null) {
+            filter.acceptReasoning(message.getString("reasoning_content"));
+            content = filter.filter(content);
+        }
+        
+        LLMCompletion completion = new LLMCompletion();
+        completion.setModel(model);
+        completion.setContent(content);
+        completion.setFinishReason(choice.getString("finish_reason"));
+        int reportedReasoningTokens = 0;
+        JSONObject usage = jsonResponse.getJSONObject("usage");
+        if (usage != null) {
+            completion.setPromptTokens(usage.getIntValue("prompt_tokens"));
+            completion.setCompletionTokens(usage.getIntValue("completion_tokens"));
+            JSONObject details = usage.getJSONObject("completion_tokens_details");
+            if (details != null) {
+                reportedReasoningTokens = details.getIntValue("reasoning_tokens");
+            }
+        }
+        reasoningStats.recordResponse(model, filter, reportedReasoningTokens);
+        return completion;
+    }
+    
+    /**
+     * 对冲执行非流式请求：主请求超过对冲延迟仍未收到响应头时，向一个未熔断的备选模型发送重复请求，
+     * 先成功返回的结果胜出，另一个请求随即取消
+     */
+    private LLMCompletion executeHedged(Request request, String baseUrl, String apiKey, String model,
+                                        List<Map<String, String>> messageList, Integer maxTokensOverride) {
+        OkHttpClient client = httpClients.clientFor(baseUrl, apiKey);
+        long delayMs = hedgingPolicy.hedgeDelayMs(model);
+        hedgingPolicy.recordPrimary();
+        PendingCall primary = enqueueCompletion(client, request, baseUrl, model);
+        OutboundIoExecutor.onCancel(primary.call::cancel);
+        PendingCall hedge = null;
         try {
-            JSONObject requestBody = new JSONObject();
-            requestBody.put("model", model);
-            requestBody.put("max_tokens", maxTokens);
-            requestBody.put("temperature", temperature);
+            if (delayMs >= 0 && !awaitFirstByte(primary, delayMs) && hedgingPolicy.tryAcquireHedge()) {
+                String hedgeModel = selectHedgeModel(baseUrl, model);
+                if (hedgeModel != null) {
+                    String hedgeBody = buildRequestBody(hedgeModel, messageList, false, maxTokensOverride).toJSONString();
+                    hedge = enqueueCompletion(client, buildRequest(baseUrl, apiKey, hedgeBody, request.tag(String.class)),
+                            baseUrl, hedgeModel);
+                    OutboundIoExecutor.onCancel(hedge.call::cancel);
+                } else {
+                    hedgingPolicy.refundHedge();
+                }
+            }
+            return awaitWinner(primary, hedge);
+        } finally {
+            primary.call.cancel();
+            if (hedge != null) {
+                hedge.call.cancel();
+            }
+        }
+    }
+    
+    /**
+     * 一次异步发出的请求：firstByte 在收到响应头时完成，result 在解析出结果后完成
+     */
+    private static class PendingCall {
+        final CompletableFuture<Void> firstByte = new CompletableFuture<>();
+        final CompletableFuture<LLMCompletion> result = new CompletableFuture<>();
+        Call call;
+    }
+    
+    private PendingCall enqueueCompletion(OkHttpClient client, Request request, String baseUrl, String model) {
+        PendingCall attempt = new PendingCall();
+        long start = System.currentTimeMillis();
+        attempt.call = client.newCall(request);
+        attempt.call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                long latency = System.currentTimeMillis() - start;
+                if (call.isCanceled()) {
+                    circuitBreaker.release(baseUrl, model);
+                } else {
+                    circuitBreaker.record(baseUrl, model, true, latency);
+                }
+                llmMetrics.record(request, model, 0, null, -1, latency, call.isCanceled());
+                attempt.firstByte.complete(null);
+                attempt.result.completeExceptionally(new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e));
+            }
             
-            JSONArray messages = new JSONArray();
-            JSONObject message = new JSONObject();
-            message.put("role", "user");
-            message.put("content", prompt);
-            messages.add(message);
-            requestBody.put("messages", messages);
+            @Override
+            public void onResponse(Call call, Response response) {
+                long latency = System.currentTimeMillis() - start;
+                attempt.firstByte.complete(null);
+                hedgingPolicy.recordFirstByte(model, latency);
+                circuitBreaker.record(baseUrl, model,
+                        !response.isSuccessful() && LLMCircuitBreaker.isProviderFailure(response.code()), latency);
+                LLMCompletion completion = null;
+                try (response) {
+                    completion = readCompletion(response, model);
+                    attempt.result.complete(completion);
+                } catch (Exception e) {
+                    attempt.result.completeExceptionally(e instanceof IOException
+                            ? new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e)
+                            : e);
+                } finally {
+                    llmMetrics.record(request, model, response.code(), completion, latency,
+                            System.currentTimeMillis() - start, call.isCanceled());
+                }
+            }
+        });
+        return attempt;
+    }
+    
+    /**
+     * 在对冲延迟内等待主请求的响应头，超时返回false
+     */
+    private boolean awaitFirstByte(PendingCall attempt, long delayMs) {
+        try {
+            attempt.firstByte.get(delayMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LLM调用被中断", e);
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+    
+    /**
+     * 等待第一个成功的结果；两个请求都失败时抛出后失败者的异常
+     */
+    private LLMCompletion awaitWinner(PendingCall primary, PendingCall hedge) {
+        CompletableFuture<LLMCompletion> winner = new CompletableFuture<>();
+        List<PendingCall> attempts = hedge != null ? List.of(primary, hedge) : List.of(primary);
+        AtomicInteger remaining = new AtomicInteger(attempts.size());
+        for (PendingCall attempt : attempts) {
+            attempt.result.whenComplete((completion, error) -> {
+                if (error == null) {
+                    if (winner.complete(completion) && attempt == hedge) {
+                        hedgingPolicy.recordHedgeWin();
+                    }
+                } else if (remaining.decrementAndGet() == 0) {
+                    winner.completeExceptionally(error);
+                }
+            });
+        }
+        
+        // 调度器名额被占满时请求会一直排队，等待时间必须有上限
+        long timeoutSeconds = systemConnectTimeout + systemWriteTimeout + systemReadTimeout;
+        try {
+            return winner.get(timeoutSeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LLM调用被中断", e);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("LLM调用超时（" + timeoutSeconds + "秒内未返回结果）", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        }
+    }
+    
+    /**
+     * 对冲使用的备选模型：available-models 中除主模型外第一个未熔断的模型
+     */
+    private String selectHedgeModel(String baseUrl, String model) {
+        for (String available : getAvailableModels()) {
+            String candidate = available.trim();
+            if (!candidate.equals(model) && circuitBreaker.allowRequest(baseUrl, candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * 调用LLM API（通用方法，支持自定义配置）
+     */
+    public String chat(String prompt, String baseUrl, String apiKey, String model) {
+        return chat(baseUrl, apiKey, model, singleUserMessage(prompt));
+    }
+    
+    /**
+     * 流式生成学习计划（使用系统默认配置 - 登录用户）
+     * 返回底层的HTTP调用，调用方可据此取消；模拟模式或命中缓存时同步回调并返回null
+     */
+    public Call streamStudyPlan(String goal, String level, double dailyHours, int totalDays, String modelName,
+                                String language, boolean useCache, LLMStreamListener listener) {
+        if (mockMode) {
+            replay(generateMockPlan(goal, level, dailyHours, totalDays), listener);
+            return null;
+        }
+        
+        String useModel = (modelName != null && !modelName.isEmpty()) ? modelName : defaultModel;
+        String cacheKey = planCacheKey(goal, level, dailyHours, totalDays, useModel, language);
+        if (useCache) {
+            String cached = planResultCache.get(cacheKey);
+            if (cached != null) {
+                replay(cached, listener);
+                return null;
+            }
+        }
+        
+        String prompt = buildPlanPrompt(goal, level, dailyHours, totalDays, language);
+        Integer budget = tokenBudget.budgetFor(useModel, compactSchema, totalDays);
+        StringBuilder fullText = new StringBuilder();
+        LLMStreamListener cachingListener = new LLMStreamListener() {
+            @Override
+            public void onDelta(String content) {
+                fullText.append(content);
+                listener.onDelta(content);
+            }
             
-            // 确保URL格式正确
-            String url = baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
+            @Override
+            public void onComplete() {
+                cacheIfComplete(cacheKey, fullText.toString());
+                listener.onComplete();
+            }
             
-            Request request = new Request.Builder()
-                    .url(url)
-                    .header("Authorization", "Bearer " + apiKey)
-                    .header("Content-Type", "application/json")
-                    .post(RequestBody.create(requestBody.toJSONString(), MediaType.parse("application/json")))
-                    .build();
+            @Override
+            public void onError(Throwable error) {
+                listener.onError(error);
+            }
+        };
+        try {
+            return streamChat(defaultBaseUrl, defaultApiKey, useModel, singleUserMessage(prompt), budget,
+                    LLMMetrics.PLAN, cachingListener);
+        } catch (LLMUnavailableException e) {
+            String cached = planResultCache.get(cacheKey);
+            if (cached == null) {
+                listener.onError(e);
+            } else {
+                System.err.println("LLM服务熔断中，返回缓存计划: " + goal);
+                replay(cached, listener);
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * 将完整文本按小块回放给流式回调（模拟模式与缓存命中时使用）
+     */
+    private void replay(String text, LLMStreamListener listener) {
+        for (int i = 0; i < text.length(); i += REPLAY_CHUNK) {
+            listener.onDelta(text.substring(i, Math.min(text.length(), i + REPLAY_CHUNK)));
+        }
+        listener.onComplete();
+    }
+    
+    /**
+     * 计划缓存键：对 buildPlanPrompt 的输入做规范化，
+     * 仅在空白、大小写、全半角上不同的请求视为相同请求
+     */
+    private String planCacheKey(String goal, String level, double dailyHours, int totalDays, String model, String language) {
+        return String.join("|",
+                model,
+                resolveEnglish(goal, level, language) ? "en" : "zh",
+                normalizeForCache(goal),
+                normalizeForCache(level),
+                BigDecimal.valueOf(dailyHours).stripTrailingZeros().toPlainString(),
+                String.valueOf(totalDays));
+    }
+    
+    private String normalizeForCache(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return normalized.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * 仅缓存能完整解析出 dailyPlans 的响应，避免缓存被截断或格式错误的结果
+     */
+    private void cacheIfComplete(String cacheKey, String response) {
+        if (response == null || !planResultCache.isEnabled()) {
+            return;
+        }
+        PlanStreamParser parser = new PlanStreamParser();
+        if (!parser.feed(response).isEmpty() && parser.isDailyPlansClosed()) {
+            planResultCache.put(cacheKey, response);
+        }
+    }
+    
+    /**
+     * 流式对话（stream: true），增量内容通过回调实时推送
+     * 请求异步执行，不占用调用线程；返回的Call可用于取消上游请求
+     */
+    public Call streamChat(String baseUrl, String apiKey, String model, List<Map<String, String>> messageList,
+                           LLMStreamListener listener) {
+        return streamChat(baseUrl, apiKey, model, messageList, null, LLMMetrics.CHAT, listener);
+    }
+    
+    /**
+     * 流式对话，可指定本次请求的 max_tokens（为null时使用全局配置）
+     * 模型被熔断时切换备选模型，全部被熔断时直接抛出 LLMUnavailableException
+     *
+     * @param endpoint 指标中的接口标签（见 LLMMetrics）
+     */
+    public Call streamChat(String baseUrl, String apiKey, String model, List<Map<String, String>> messageList,
+                           Integer maxTokensOverride, String endpoint, LLMStreamListener listener) {
+        String useModel = selectModel(baseUrl, apiKey, model);
+        JSONObject requestBody = buildRequestBody(useModel, messageList, true, maxTokensOverride);
+        Request request = buildRequest(baseUrl, apiKey, requestBody.toJSONString(), endpoint);
+        
+        long start = System.currentTimeMillis();
+        Call call = httpClients.clientFor(baseUrl, apiKey).newCall(request);
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                long latency = System.currentTimeMillis() - start;
+                if (call.isCanceled()) {
+                    circuitBreaker.release(baseUrl, useModel);
+                } else {
+                    circuitBreaker.record(baseUrl, useModel, true, latency);
+                }
+                llmMetrics.record(request, useModel, 0, null, -1, latency, call.isCanceled());
+                listener.onError(new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e));
+            }
             
-            try (Response response = client.newCall(request).execute()) {
-                String responseBody = response.body() != null ? response.body().string() : "";
-                
-                if (!response.isSuccessful()) {
-                    throw new RuntimeException("LLM API调用失败: " + response.code() + " - " + responseBody);
+            @Override
+            public void onResponse(Call call, Response response) {
+                // 流式调用以收到响应头的耗时计入熔断统计
+                long firstByte = System.currentTimeMillis() - start;
+                circuitBreaker.record(baseUrl, useModel,
+                        !response.isSuccessful() && LLMCircuitBreaker.isProviderFailure(response.code()), firstByte);
+                // 汇总结束原因与token用量（服务端未在流中返回usage时按内容估算输出token数）
+                LLMCompletion streamed = null;
+                try (response) {
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful()) {
+                        String errorBody = body != null ? body.string() : "";
+                        throw new RuntimeException("LLM API调用失败: " + response.code() + " - " + errorBody);
+                    }
+                    if (body == null) {
+                        throw new RuntimeException("LLM API返回了空响应");
+                    }
+                    
+                    // 推理内容（<think>块与 reasoning_content）到达即丢弃，只推送正式回答
+                    ReasoningFilter filter = reasoningStats.newFilter();
+                    boolean answered = false;
+                    LLMCompletion aggregate = new LLMCompletion();
+                    aggregate.setModel(useModel);
+                    int estimatedTokens = 0;
+                    BufferedSource source = body.source();
+                    String line;
+                    while ((line = source.readUtf8Line()) != null) {
+                        // SSE格式：每个事件以 "data: " 开头，以 [DONE] 结束
+                        if (!line.startsWith("data:")) {
+                            continue;
+                        }
+                        String data = line.substring(5).trim();
+                        if ("[DONE]".equals(data)) {
+                            break;
+                        }
+                        if (data.isEmpty()) {
+                            continue;
+                        }
+                        
+                        JSONObject chunk = JSON.parseObject(data);
+                        JSONObject usage = chunk.getJSONObject("usage");
+                        if (usage != null) {
+                            aggregate.setPromptTokens(usage.getIntValue("prompt_tokens"));
+                            aggregate.setCompletionTokens(usage.getIntValue("completion_tokens"));
+                        }
+                        JSONArray choices = chunk.getJSONArray("choices");
+                        if (choices == null || choices.isEmpty()) {
+                            continue;
+                        }
+                        JSONObject choice = choices.getJSONObject(0);
+                        if (choice.getString("finish_reason") != null) {
+                            aggregate.setFinishReason(choice.getString("finish_reason"));
+                        }
+                        JSONObject delta = choice.getJSONObject("delta");
+                        if (delta == null) {
+                            continue;
+                        }
+                        String content = delta.getString("content");
+                        estimatedTokens += ChatContextManager.estimateTokens(content)
+                                + ChatContextManager.estimateTokens(delta.getString("reasoning_content"));
+                        if (filter != null) {
+                            filter.acceptReasoning(delta.getString("reasoning_content"));
+                            content = filter.accept(content);
+                        }
+                        if (content != null && !content.isEmpty()) {
+                            if (!answered) {
+                                answered = true;
+                                reasoningStats.recordFirstAnswer(useModel, System.currentTimeMillis() - start);
+                            }
+                            listener.onDelta(content);
+                        }
+                    }
+                    if (filter != null) {
+                        String rest = filter.flush();
+                        if (!rest.isEmpty()) {
+                            listener.onDelta(rest);
+                        }
+                    }
+                    reasoningStats.recordResponse(useModel, filter, 0);
+                    reasoningStats.recordStream(useModel, System.currentTimeMillis() - start);
+                    if (aggregate.getCompletionTokens() == 0) {
+                        aggregate.setCompletionTokens(estimatedTokens);
+                    }
+                    streamed = aggregate;
+                    listener.onComplete();
+                } catch (Exception e) {
+                    listener.onError(e instanceof IOException
+                            ? new RuntimeException("读取LLM流式响应时发生错误: " + e.getMessage(), e)
+                            : e);
+                } finally {
+                    llmMetrics.record(request, useModel, response.code(), streamed, firstByte,
+                            System.currentTimeMillis() - start, call.isCanceled());
                 }
-                
-                JSONObject jsonResponse = JSON.parseObject(responseBody);
-                
-                return jsonResponse
-                        .getJSONArray("choices")
-                        .getJSONObject(0)
-                        .getJSONObject("message")
-                        .getString("content");
             }
-        } catch (IOException e) {
-            throw new RuntimeException("调用LLM API时发生错误: " + e.getMessage(), e);
+        });
+        return call;
+    }
+    
+    /**
+     * 构建 chat/completions 请求体
+     */
+    private JSONObject buildRequestBody(String model, List<Map<String, String>> messageList, boolean stream,
+                                        Integer maxTokensOverride) {
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("model", model);
+        requestBody.put("max_tokens", maxTokensOverride != null ? maxTokensOverride : maxTokens);
+        requestBody.put("temperature", temperature);
+        if (stream) {
+            requestBody.put("stream", true);
+        }
+        
+        JSONArray messages = new JSONArray();
+        for (Map<String, String> msg : messageList) {
+            JSONObject message = new JSONObject();
+            message.put("role", msg.get("role"));
+            message.put("content", msg.get("content"));
+            messages.add(message);
         }
+        requestBody.put("messages", messages);
+        return requestBody;
+    }
+    
+    /**
+     * 构建HTTP请求
+     */
+    private Request buildRequest(String baseUrl, String apiKey, String requestBody, String endpoint) {
+        // 确保URL格式正确
+        String url = baseUrl.endsWith("/") ? baseUrl + "chat/completions" : baseUrl + "/chat/completions";
+        // 访客自定义API的调用在指标中单独标记
+        String metricsEndpoint = httpClients.isSystem(baseUrl, apiKey) ? endpoint : "guest-" + endpoint;
+        
+        return new Request.Builder()
+                .url(url)
+                .tag(String.class, metricsEndpoint)
+                .header("Authorization", "Bearer " + apiKey)
+                .header("Content-Type", "application/json")
+                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
+                .build();
+    }
+    
+    private List<Map<String, String>> singleUserMessage(String prompt) {
+        return List.of(Map.of("role", "user", "content", prompt));
     }
     
     /**
      * 构建学习计划生成的Prompt
      */
     private String buildPlanPrompt(String goal, String level, double dailyHours, int totalDays, String language) {
-        // 根据前端传递的语言设置决定提示词语言
-        // 如果language为null或空，则回退到检测用户输入
-        boolean isEnglishInput;
-        if (language != null && !language.isEmpty()) {
-            // 使用前端传递的语言设置
-            isEnglishInput = "en-US".equalsIgnoreCase(language);
+        boolean isEnglishInput = resolveEnglish(goal, level, language);
+        String languageInstruction = languageInstruction(isEnglishInput);
+        
+        String formatInstruction;
+        if (compactSchema) {
+            formatInstruction = isEnglishInput
+                ? """
+                    Please return the study plan in the following JSON format (ONLY JSON, no other content):
+                    {"title": "Plan Title", "summary": "Plan Summary", "dailyPlans": [
+                        [1, "Detailed description of today's learning content", %.1f, ["Resource 1", "Resource 2"]]
+                    ]}
+                    Each element of dailyPlans is an array of: day number, learning content, duration (hours), list of resources.
+                    """
+                : """
+                    请按照以下JSON格式返回学习计划（注意：只返回JSON，不要有其他内容）：
+                    {"title": "计划标题", "summary": "计划概述", "dailyPlans": [
+                        [1, "今日学习内容详细描述", %.1f, ["推荐资源1", "推荐资源2"]]
+                    ]}
+                    dailyPlans 的每个元素是一个数组，依次为：天数、学习内容、学习时长（小时）、推荐资源列表。
+                    """;
         } else {
-            // 回退到检测用户输入（兼容旧逻辑）
-            boolean goalHasChinese = containsChinese(goal);
-            boolean levelHasChinese = containsChinese(level);
-            boolean goalHasEnglish = containsEnglish(goal);
-            boolean levelHasEnglish = containsEnglish(level);
-            isEnglishInput = !goalHasChinese && !levelHasChinese && (goalHasEnglish || levelHasEnglish);
-        }
-        String languageInstruction = isEnglishInput 
-            ? "CRITICAL LANGUAGE REQUIREMENT: The user's input is entirely in English. You MUST generate the ENTIRE study plan in English ONLY. This includes: title, summary, all daily content descriptions, and all resource names. DO NOT use any Chinese characters. If you use Chinese, the response will be considered incorrect. The output language MUST match the input language."
-            : "请使用中文生成学习计划。所有内容（标题、摘要、每日学习内容、推荐资源）都必须使用中文。";
+            formatInstruction = isEnglishInput
+                ? """
+                    Please return the study plan in the following JSON format (ONLY JSON, no other content):
+                    {
+                        "title": "Plan Title",
+                        "summary": "Plan Summary",
+                        "dailyPlans": [
+                            {
+                                "day": 1,
+                                "content": "Detailed description of today's learning content",
+                                "duration": %.1f,
+                                "resources": ["Resource 1", "Resource 2"]
+                            }
+                        ]
+                    }
+                    """
+                : """
+                    请按照以下JSON格式返回学习计划（注意：只返回JSON，不要有其他内容）：
+                    {
+                        "title": "计划标题",
+                        "summary": "计划概述",
+                        "dailyPlans": [
+                            {
+                                "day": 1,
+                                "content": "今日学习内容详细描述",
+                                "duration": %.1f,
+                                "resources": ["推荐资源1", "推荐资源2"]
+                            }
+                        ]
+                    }
+                    """;
         
-        String formatInstruction = isEnglishInput
-            ? """
-                Please return the study plan in the following JSON format (ONLY JSON, no other content):
-                {
-                    "title": "Plan Title",
-                    "summary": "Plan Summary",
-                    "dailyPlans": [
-                        {
-                            "day": 1,
-                            "content": "Detailed description of today's learning content",
-                            "duration": %.1f,
-                            "resources": ["Resource 1", "Resource 2"]
-                        }
-                    ]
-                }
-                """
-            : """
-                请按照以下JSON格式返回学习计划（注意：只返回JSON，不要有其他内容）：
-                {
-                    "title": "计划标题",
-                    "summary": "计划概述",
-                    "dailyPlans": [
-                        {
-                            "day": 1,
-                            "content": "今日学习内容详细描述",
-                            "duration": %.1f,
-                            "resources": ["推荐资源1", "推荐资源2"]
-                        }
-                    ]
-                }
-                """;
+        }
         
         String requirements = isEnglishInput
             ? """
@@ -322,6 +1358,179 @@ public class LLMService {
             String.format(requirements, totalDays));
     }
     
+    /**
+     * 构建长计划阶段大纲的Prompt
+     */
+    private String buildOutlinePrompt(String goal, String level, double dailyHours, int totalDays, boolean english) {
+        String template = english
+            ? """
+                You are a professional learning planner. Design a phased outline for the following long-term study plan:
+                【Learning Goal】：%s
+                【Base Level】：%s
+                【Daily Available Time】：%.1f hours
+                【Plan Duration】：%d days
+                
+                %s
+                
+                Please return the outline in the following JSON format (ONLY JSON, no other content):
+                {"title": "Plan Title", "summary": "Plan Summary", "phases": [{"startDay": 1, "endDay": 14, "focus": "Key learning focus of this phase"}]}
+                
+                Requirements: phases must cover day 1 to day %d in order without overlaps or gaps; each phase spans 5 to 30 days; progress from basic to advanced.
+                """
+            : """
+                你是一个专业的学习规划师，请为以下长期学习计划设计分阶段大纲：
+                【学习目标】：%s
+                【基础水平】：%s
+                【每日可用时间】：%.1f 小时
+                【计划周期】：%d 天
+                
+                %s
+                
+                请按照以下JSON格式返回大纲（注意：只返回JSON，不要有其他内容）：
+                {"title": "计划标题", "summary": "计划概述", "phases": [{"startDay": 1, "endDay": 14, "focus": "本阶段学习重点"}]}
+                
+                要求：各阶段按顺序覆盖第1天到第%d天，不重叠、不遗漏；每个阶段5到30天；循序渐进，由浅入深。
+                """;
+        return String.format(template, goal, level, dailyHours, totalDays, languageInstruction(english), totalDays);
+    }
+    
+    /**
+     * 构建长计划单个分段的Prompt
+     */
+    private String buildSegmentPrompt(PlanSegment segment, String goal, String level, double dailyHours, int totalDays,
+                                      String title, String outlineSummary, boolean english) {
+        int segmentLength = segment.endDay - segment.startDay + 1;
+        String template = english
+            ? """
+                You are a professional learning planner. The following is one segment of a %d-day study plan. Generate the daily tasks for day %d to day %d ONLY.
+                【Learning Goal】：%s
+                【Base Level】：%s
+                【Daily Available Time】：%.1f hours
+                【Plan Title】：%s
+                【Overall Outline】：
+                %s
+                【Focus of This Segment】：%s
+                
+                %s
+                
+                Please return the tasks in the following JSON format (ONLY JSON, no other content):
+                %s
+                
+                Requirements: number the days consecutively from %d to %d (%d days in total); daily content should be specific and actionable and connect smoothly with the overall outline.
+                """
+            : """
+                你是一个专业的学习规划师。下面是一个%d天学习计划中的一段，请只生成第%d天到第%d天的每日任务。
+                【学习目标】：%s
+                【基础水平】：%s
+                【每日可用时间】：%.1f 小时
+                【计划标题】：%s
+                【整体大纲】：
+                %s
+                【本段重点】：%s
+                
+                %s
+                
+                请按照以下JSON格式返回（注意：只返回JSON，不要有其他内容）：
+                %s
+                
+                要求：day 从%d连续编号到%d，共%d天；每天的内容要具体可执行，并与整体大纲衔接。
+                """;
+        return String.format(template, totalDays, segment.startDay, segment.endDay, goal, level, dailyHours,
+                title, outlineSummary, segment.focus, languageInstruction(english),
+                dailyPlansExample(english, segment.startDay, dailyHours), segment.startDay, segment.endDay, segmentLength);
+    }
+    
+    /**
+     * 构建续写缺失天数的Prompt（响应被截断或漏掉部分天数时使用）
+     */
+    private String buildContinuationPrompt(PlanSegment range, String goal, String level, double dailyHours, int totalDays,
+                                           String title, String summary, String previousContent, boolean english) {
+        int rangeLength = range.endDay - range.startDay + 1;
+        String template = english
+            ? """
+                You are a professional learning planner. Part of a %d-day study plan has already been generated. Generate the daily tasks for day %d to day %d ONLY.
+                【Learning Goal】：%s
+                【Base Level】：%s
+                【Daily Available Time】：%.1f hours
+                【Plan Title】：%s
+                【Plan Summary】：%s
+                【Content of the Previous Day】：%s
+                
+                %s
+                
+                Please return the tasks in the following JSON format (ONLY JSON, no other content):
+                %s
+                
+                Requirements: number the days consecutively from %d to %d (%d days in total); continue naturally from the previous content, progressing from basic to advanced.
+                """
+            : """
+                你是一个专业的学习规划师。一个%d天的学习计划已生成了一部分，请只生成第%d天到第%d天的每日任务。
+                【学习目标】：%s
+                【基础水平】：%s
+                【每日可用时间】：%.1f 小时
+                【计划标题】：%s
+                【计划概述】：%s
+                【前一天的学习内容】：%s
+                
+                %s
+                
+                请按照以下JSON格式返回（注意：只返回JSON，不要有其他内容）：
+                %s
+                
+                要求：day 从%d连续编号到%d，共%d天；内容与前文衔接，循序渐进。
+                """;
+        return String.format(template, totalDays, range.startDay, range.endDay, goal, level, dailyHours,
+                nullToEmpty(title), nullToEmpty(summary), nullToEmpty(previousContent), languageInstruction(english),
+                dailyPlansExample(english, range.startDay, dailyHours), range.startDay, range.endDay, rangeLength);
+    }
+    
+    private String nullToEmpty(String text) {
+        return text != null ? text : "";
+    }
+    
+    /**
+     * 仅包含 dailyPlans 的返回格式示例（按当前输出格式配置生成）
+     */
+    private String dailyPlansExample(boolean english, int day, double dailyHours) {
+        if (compactSchema) {
+            return english
+                ? String.format("{\"dailyPlans\": [[%d, \"Detailed description of today's learning content\", %.1f, [\"Resource 1\", \"Resource 2\"]]]}%n"
+                    + "Each element of dailyPlans is an array of: day number, learning content, duration (hours), list of resources.", day, dailyHours)
+                : String.format("{\"dailyPlans\": [[%d, \"今日学习内容详细描述\", %.1f, [\"推荐资源1\", \"推荐资源2\"]]]}%n"
+                    + "dailyPlans 的每个元素是一个数组，依次为：天数、学习内容、学习时长（小时）、推荐资源列表。", day, dailyHours);
+        }
+        return english
+            ? String.format("{\"dailyPlans\": [{\"day\": %d, \"content\": \"Detailed description of today's learning content\", \"duration\": %.1f, \"resources\": [\"Resource 1\", \"Resource 2\"]}]}", day, dailyHours)
+            : String.format("{\"dailyPlans\": [{\"day\": %d, \"content\": \"今日学习内容详细描述\", \"duration\": %.1f, \"resources\": [\"推荐资源1\", \"推荐资源2\"]}]}", day, dailyHours);
+    }
+    
+    /**
+     * 输出语言约束
+     */
+    private String languageInstruction(boolean english) {
+        return english
+            ? "CRITICAL LANGUAGE REQUIREMENT: The user's input is entirely in English. You MUST generate the ENTIRE study plan in English ONLY. This includes: title, summary, all daily content descriptions, and all resource names. DO NOT use any Chinese characters. If you use Chinese, the response will be considered incorrect. The output language MUST match the input language."
+            : "请使用中文生成学习计划。所有内容（标题、摘要、每日学习内容、推荐资源）都必须使用中文。";
+    }
+    
+    /**
+     * 判断计划是否应使用英文生成
+     */
+    private boolean resolveEnglish(String goal, String level, String language) {
+        // 根据前端传递的语言设置决定提示词语言
+        // 如果language为null或空，则回退到检测用户输入
+        if (language != null && !language.isEmpty()) {
+            // 使用前端传递的语言设置
+            return "en-US".equalsIgnoreCase(language);
+        }
+        // 回退到检测用户输入（兼容旧逻辑）
+        boolean goalHasChinese = containsChinese(goal);
+        boolean levelHasChinese = containsChinese(level);
+        boolean goalHasEnglish = containsEnglish(goal);
+        boolean levelHasEnglish = containsEnglish(level);
+        return !goalHasChinese && !levelHasChinese && (goalHasEnglish || levelHasEnglish);
+    }
+    
     /**
      * 检测字符串是否包含中文字符
      */
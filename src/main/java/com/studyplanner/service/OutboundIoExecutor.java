@@ -0,0 +1,265 @@
+package com.studyplanner.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 阻塞型外部I/O（LLM调用、SMTP发信）专用执行器
+ *
+ * 运行时支持虚拟线程（JDK 21+）且已开启时使用每任务一个虚拟线程，否则使用有界的平台线程池；
+ * 任务以 CompletableFuture 返回，取消时中断执行线程并回调任务内登记的取消钩子（如取消OkHttp调用），
+ * 从而可以随请求的超时或断开一起结束。
+ */
+@Service
+public class OutboundIoExecutor {
+
+    @Value("${outbound.executor.virtual-threads:true}")
+    private boolean virtualThreadsEnabled;
+
+    @Value("${outbound.executor.max-threads:256}")
+    private int maxThreads;
+
+    @Value("${outbound.executor.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // 虚拟线程被固定在载体线程上超过该时长时计数
+    @Value("${outbound.executor.pinned-threshold-ms:20}")
+    private long pinnedThresholdMs;
+
+    private static final ThreadLocal<TaskScope> CURRENT_SCOPE = new ThreadLocal<>();
+
+    private ExecutorService executor;
+    private boolean virtualThreads;
+    private AutoCloseable pinnedEventStream;
+
+    private final ConcurrentHashMap<String, TaskStats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong pinnedEvents = new AtomicLong();
+
+    /**
+     * 任务的取消范围：任务取消时依次执行登记的钩子
+     */
+    private static class TaskScope {
+        final List<Runnable> cancelHooks = new CopyOnWriteArrayList<>();
+        volatile boolean cancelled;
+
+        void cancel() {
+            cancelled = true;
+            cancelHooks.forEach(Runnable::run);
+        }
+    }
+
+    private static class TaskStats {
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong totalMillis = new AtomicLong();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (virtualThreadsEnabled) {
+            executor = newVirtualThreadExecutor();
+        }
+        virtualThreads = executor != null;
+        if (!virtualThreads) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(queueCapacity),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "outbound-io-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        } else {
+            startPinnedEventStream();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        if (pinnedEventStream != null) {
+            try {
+                pinnedEventStream.close();
+            } catch (Exception ignored) {
+                // 关闭时忽略
+            }
+        }
+    }
+
+    /**
+     * 通过反射创建虚拟线程执行器，当前JDK不支持时返回null
+     */
+    private ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("当前JDK不支持虚拟线程，外部I/O使用平台线程池（最多" + maxThreads + "个线程）");
+            return null;
+        }
+    }
+
+    /**
+     * 通过JFR统计虚拟线程被固定（pinned）在载体线程上的次数
+     */
+    private void startPinnedEventStream() {
+        try {
+            jdk.jfr.consumer.RecordingStream stream = new jdk.jfr.consumer.RecordingStream();
+            stream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(pinnedThresholdMs));
+            stream.onEvent("jdk.VirtualThreadPinned", event -> pinnedEvents.incrementAndGet());
+            stream.setMaxAge(Duration.ofMinutes(1));
+            stream.startAsync();
+            pinnedEventStream = stream;
+        } catch (Exception | LinkageError e) {
+            System.err.println("无法启用虚拟线程固定事件统计: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 提交一个外部I/O任务
+     * 返回的 future 被取消时（如请求超时），执行线程会被中断，任务内登记的取消钩子也会执行
+     *
+     * @param kind 任务类别（如 llm、smtp），用于分类统计
+     */
+    public <T> CompletableFuture<T> submit(String kind, Callable<T> task) {
+        TaskStats taskStats = stats.computeIfAbsent(kind, k -> new TaskStats());
+        TaskScope scope = new TaskScope();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        taskStats.submitted.incrementAndGet();
+
+        Future<?> future;
+        try {
+            future = executor.submit(() -> {
+                if (scope.cancelled) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                taskStats.active.incrementAndGet();
+                CURRENT_SCOPE.set(scope);
+                try {
+                    // 已被取消的任务不计入完成或失败（取消已单独统计）
+                    if (result.complete(task.call())) {
+                        taskStats.completed.incrementAndGet();
+                    }
+                } catch (Throwable e) {
+                    if (result.completeExceptionally(e)) {
+                        taskStats.failed.incrementAndGet();
+                    }
+                } finally {
+                    CURRENT_SCOPE.remove();
+                    taskStats.active.decrementAndGet();
+                    taskStats.totalMillis.addAndGet(System.currentTimeMillis() - start);
+                }
+            });
+        } catch (RuntimeException e) {
+            taskStats.failed.incrementAndGet();
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                taskStats.cancelled.incrementAndGet();
+                scope.cancel();
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 为当前正在执行的任务登记取消钩子；不在执行器任务内调用时不做任何事
+     */
+    public static void onCancel(Runnable hook) {
+        TaskScope scope = CURRENT_SCOPE.get();
+        if (scope == null) {
+            return;
+        }
+        scope.cancelHooks.add(hook);
+        if (scope.cancelled) {
+            hook.run();
+        }
+    }
+
+    /**
+     * 当前正在执行的任务是否已被取消；不在执行器任务内调用时返回false
+     */
+    public static boolean isCurrentCancelled() {
+        TaskScope scope = CURRENT_SCOPE.get();
+        return scope != null && scope.cancelled;
+    }
+
+    /**
+     * 让任务在其他线程池中执行时沿用当前任务的取消范围（如长计划的分段并行生成）
+     */
+    public static <T> Callable<T> withCurrentScope(Callable<T> task) {
+        TaskScope scope = CURRENT_SCOPE.get();
+        if (scope == null) {
+            return task;
+        }
+        return () -> {
+            TaskScope previous = CURRENT_SCOPE.get();
+            CURRENT_SCOPE.set(scope);
+            try {
+                return task.call();
+            } finally {
+                if (previous != null) {
+                    CURRENT_SCOPE.set(previous);
+                } else {
+                    CURRENT_SCOPE.remove();
+                }
+            }
+        };
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> kinds = new HashMap<>();
+        stats.forEach((kind, taskStats) -> {
+            long finished = taskStats.completed.get() + taskStats.failed.get();
+            Map<String, Object> item = new HashMap<>();
+            item.put("active", taskStats.active.get());
+            item.put("submitted", taskStats.submitted.get());
+            item.put("completed", taskStats.completed.get());
+            item.put("failed", taskStats.failed.get());
+            item.put("cancelled", taskStats.cancelled.get());
+            item.put("avgMillis", finished > 0 ? taskStats.totalMillis.get() / finished : 0);
+            kinds.put(kind, item);
+        });
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("virtualThreads", virtualThreads);
+        result.put("pinnedEvents", pinnedEvents.get());
+        if (executor instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) executor;
+            result.put("poolSize", pool.getPoolSize());
+            result.put("queued", pool.getQueue().size());
+        }
+        result.put("tasks", kinds);
+        return result;
+    }
+}
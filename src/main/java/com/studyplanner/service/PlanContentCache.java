@@ -0,0 +1,333 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.event.PlanCheckedInEvent;
+import com.studyplanner.event.PlanDeletedEvent;
+import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计划内容缓存
+ *
+ * 计划生成后每日任务的内容不再变化，只有完成状态会变。这里按计划ID分两部分缓存：
+ * 不可变的内容（计划所属用户、开始日期、总天数和每日任务，按LRU淘汰，受计划数和总字符数限制），
+ * 以及单独缓存的完成状态位图（按任务在内容中的位置），读取时把完成状态叠加到任务副本上返回。
+ * 打卡提交后直接置位，计划删除提交后失效；流式生成写入新任务时由调用方失效。
+ * 加载期间发生过失效的计划，加载结果不写入缓存，避免缓存旧数据。
+ */
+@Component
+public class PlanContentCache {
+
+    @Autowired
+    private PlanMapper planMapper;
+
+    @Autowired
+    private PlanDetailMapper planDetailMapper;
+
+    @Value("${plan.content-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${plan.content-cache.max-plans:1000}")
+    private int maxPlans;
+
+    @Value("${plan.content-cache.max-total-chars:50000000}")
+    private long maxTotalChars;
+
+    @Value("${plan.content-cache.completion-max-plans:10000}")
+    private int completionMaxPlans;
+
+    // 失效记录保留的时长，超过该时长的加载视为异常，不再需要比较
+    private static final long INVALIDATION_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    // accessOrder=true：队首即最久未使用
+    private final LinkedHashMap<Long, PlanContent> contents = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Long, BitSet> completions = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalChars = 0;
+
+    // 计划最近一次失效的时间（System.nanoTime）
+    private final ConcurrentHashMap<Long, Long> invalidatedAt = new ConcurrentHashMap<>();
+
+    private final AtomicLong contentHits = new AtomicLong();
+    private final AtomicLong contentMisses = new AtomicLong();
+    private final AtomicLong completionHits = new AtomicLong();
+    private final AtomicLong completionMisses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong staleLoads = new AtomicLong();
+
+    /**
+     * 计划的不可变部分，任务列表中的对象不对外暴露
+     */
+    public static class PlanContent {
+        private final Long planId;
+        private final Long userId;
+        private final LocalDate startDate;
+        private final int totalDays;
+        // 按天数升序，完成状态以位图为准
+        private final List<PlanDetail> details;
+        private final Map<Long, Integer> indexById = new HashMap<>();
+        private final Map<Integer, Integer> indexByDay = new HashMap<>();
+        private final long chars;
+
+        PlanContent(StudyPlan plan, List<PlanDetail> details) {
+            this.planId = plan.getId();
+            this.userId = plan.getUserId();
+            this.startDate = plan.getStartDate();
+            this.totalDays = plan.getTotalDays() != null ? plan.getTotalDays() : 0;
+            this.details = Collections.unmodifiableList(new ArrayList<>(details));
+            long size = 0;
+            for (int i = 0; i < details.size(); i++) {
+                PlanDetail detail = details.get(i);
+                indexById.put(detail.getId(), i);
+                indexByDay.putIfAbsent(detail.getDayNumber(), i);
+                size += length(detail.getContent()) + length(detail.getResources());
+            }
+            this.chars = size;
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() : 0;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        public LocalDate getStartDate() {
+            return startDate;
+        }
+
+        public int getTotalDays() {
+            return totalDays;
+        }
+    }
+
+    /**
+     * 获取计划内容，未缓存时从数据库加载；计划不存在时返回null
+     */
+    public PlanContent getContent(Long planId) {
+        if (enabled) {
+            synchronized (this) {
+                PlanContent cached = contents.get(planId);
+                if (cached != null) {
+                    contentHits.incrementAndGet();
+                    return cached;
+                }
+            }
+            contentMisses.incrementAndGet();
+        }
+
+        long loadStart = System.nanoTime();
+        StudyPlan plan = planMapper.findById(planId);
+        if (plan == null) {
+            return null;
+        }
+        PlanContent content = new PlanContent(plan, planDetailMapper.findByPlanId(planId));
+        // 还没有任务的计划（生成中）不缓存
+        if (enabled && !content.details.isEmpty()) {
+            putContent(content, loadStart);
+        }
+        return content;
+    }
+
+    /**
+     * 计划的全部任务（带完成状态的副本）
+     */
+    public List<PlanDetail> getDetails(PlanContent content) {
+        BitSet completed = getCompletions(content);
+        List<PlanDetail> result = new ArrayList<>(content.details.size());
+        for (int i = 0; i < content.details.size(); i++) {
+            result.add(copy(content.details.get(i), completed.get(i)));
+        }
+        return result;
+    }
+
+    /**
+     * 计划某一天的任务（带完成状态的副本），没有时返回null
+     */
+    public PlanDetail getDetail(PlanContent content, int dayNumber) {
+        Integer index = content.indexByDay.get(dayNumber);
+        if (index == null) {
+            return null;
+        }
+        return copy(content.details.get(index), getCompletions(content).get(index));
+    }
+
+    /**
+     * 使计划的缓存失效（流式生成写入新任务、生成失败清理时调用）
+     */
+    public void invalidate(Long planId) {
+        invalidatedAt.put(planId, System.nanoTime());
+        synchronized (this) {
+            PlanContent removed = contents.remove(planId);
+            if (removed != null) {
+                totalChars -= removed.chars;
+            }
+            completions.remove(planId);
+        }
+        invalidations.incrementAndGet();
+    }
+
+    /**
+     * 打卡提交后更新完成状态位图；内容未缓存时无法定位任务，直接丢弃位图
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCheckedIn(PlanCheckedInEvent event) {
+        Long planId = event.getPlanId();
+        invalidatedAt.put(planId, System.nanoTime());
+        synchronized (this) {
+            BitSet completed = completions.get(planId);
+            if (completed == null) {
+                return;
+            }
+            PlanContent content = contents.get(planId);
+            Integer index = content != null ? content.indexById.get(event.getDetailId()) : null;
+            if (index != null) {
+                completed.set(index);
+            } else {
+                completions.remove(planId);
+            }
+        }
+    }
+
+    /**
+     * 计划删除提交后失效
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeleted(PlanDeletedEvent event) {
+        invalidate(event.getPlanId());
+    }
+
+    private BitSet getCompletions(PlanContent content) {
+        if (enabled) {
+            synchronized (this) {
+                BitSet cached = completions.get(content.planId);
+                if (cached != null) {
+                    completionHits.incrementAndGet();
+                    return (BitSet) cached.clone();
+                }
+            }
+            completionMisses.incrementAndGet();
+        }
+
+        long loadStart = System.nanoTime();
+        BitSet completed = new BitSet(content.details.size());
+        for (Long detailId : planDetailMapper.findCompletedIds(content.planId)) {
+            Integer index = content.indexById.get(detailId);
+            if (index != null) {
+                completed.set(index);
+            }
+        }
+        if (enabled) {
+            synchronized (this) {
+                // 内容已被替换或失效时位置可能对不上，不缓存
+                if (contents.get(content.planId) == content && !invalidatedSince(content.planId, loadStart)) {
+                    completions.put(content.planId, (BitSet) completed.clone());
+                    Iterator<Map.Entry<Long, BitSet>> it = completions.entrySet().iterator();
+                    while (completions.size() > completionMaxPlans && it.hasNext()) {
+                        it.next();
+                        it.remove();
+                    }
+                }
+            }
+        }
+        return completed;
+    }
+
+    private synchronized void putContent(PlanContent content, long loadStart) {
+        if (content.chars > maxTotalChars) {
+            return;
+        }
+        if (invalidatedSince(content.planId, loadStart)) {
+            staleLoads.incrementAndGet();
+            return;
+        }
+        PlanContent old = contents.put(content.planId, content);
+        if (old != null) {
+            totalChars -= old.chars;
+            completions.remove(content.planId);
+        }
+        totalChars += content.chars;
+
+        Iterator<Map.Entry<Long, PlanContent>> it = contents.entrySet().iterator();
+        while ((contents.size() > maxPlans || totalChars > maxTotalChars) && it.hasNext()) {
+            Map.Entry<Long, PlanContent> eldest = it.next();
+            totalChars -= eldest.getValue().chars;
+            completions.remove(eldest.getKey());
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean invalidatedSince(Long planId, long loadStart) {
+        Long at = invalidatedAt.get(planId);
+        return at != null && at - loadStart >= 0;
+    }
+
+    private PlanDetail copy(PlanDetail source, boolean completed) {
+        PlanDetail detail = new PlanDetail();
+        detail.setId(source.getId());
+        detail.setPlanId(source.getPlanId());
+        detail.setDayNumber(source.getDayNumber());
+        detail.setContent(source.getContent());
+        detail.setDuration(source.getDuration());
+        detail.setResources(source.getResources());
+        detail.setIsCompleted(completed ? 1 : 0);
+        detail.setCreateTime(source.getCreateTime());
+        return detail;
+    }
+
+    /**
+     * 定期清理过期的失效记录
+     */
+    @Scheduled(fixedRate = 600000)
+    public void cleanupInvalidations() {
+        long now = System.nanoTime();
+        invalidatedAt.values().removeIf(at -> now - at > INVALIDATION_RETENTION_NANOS);
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long hits = contentHits.get();
+        long misses = contentMisses.get();
+        long bitHits = completionHits.get();
+        long bitMisses = completionMisses.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("plans", contents.size());
+        stats.put("maxPlans", maxPlans);
+        stats.put("totalChars", totalChars);
+        stats.put("maxTotalChars", maxTotalChars);
+        stats.put("completionPlans", completions.size());
+        stats.put("contentHits", hits);
+        stats.put("contentMisses", misses);
+        stats.put("contentHitRate", hits + misses == 0 ? 0.0 : (double) hits / (hits + misses));
+        stats.put("completionHits", bitHits);
+        stats.put("completionMisses", bitMisses);
+        stats.put("completionHitRate", bitHits + bitMisses == 0 ? 0.0 : (double) bitHits / (bitHits + bitMisses));
+        stats.put("evictions", evictions.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("staleLoads", staleLoads.get());
+        return stats;
+    }
+}
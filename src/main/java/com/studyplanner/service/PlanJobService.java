@@ -0,0 +1,171 @@
+package com.studyplanner.service;
+
+import com.studyplanner.dto.PlanGenerateRequest;
+import com.studyplanner.dto.PlanJob;
+import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.service.llm.LLMAdmissionLimiter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步计划生成任务服务
+ *
+ * 计划生成提交到有界队列，由固定大小的工作线程池执行；
+ * 任务状态保存在内存中，可轮询查询，完成后通过 /user/queue/plan-jobs 推送给用户。
+ */
+@Service
+public class PlanJobService {
+
+    @Autowired
+    private PlanService planService;
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Value("${plan.job.workers:4}")
+    private int workers;
+
+    @Value("${plan.job.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${plan.job.retention-minutes:60}")
+    private long retentionMinutes;
+
+    // 任务注册表（jobId -> 任务）
+    private final Map<String, PlanJob> jobs = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "plan-job-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交计划生成任务
+     *
+     * @param permit 请求的准入许可，任务结束（或提交失败）时释放；为null表示未启用准入控制
+     * @throws RejectedExecutionException 队列已满
+     */
+    public PlanJob submit(Long userId, PlanGenerateRequest request, LLMAdmissionLimiter.Permit permit) {
+        PlanJob job = new PlanJob();
+        job.setJobId(UUID.randomUUID().toString().replace("-", ""));
+        job.setUserId(userId);
+        job.setStatus(PlanJob.Status.PENDING);
+        job.setCreateTime(LocalDateTime.now());
+
+        jobs.put(job.getJobId(), job);
+        try {
+            executor.execute(() -> {
+                try {
+                    run(job, request);
+                } finally {
+                    release(permit);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            release(permit);
+            throw e;
+        }
+        return job;
+    }
+
+    private void release(LLMAdmissionLimiter.Permit permit) {
+        if (permit != null) {
+            permit.release();
+        }
+    }
+
+    /**
+     * 查询任务（仅任务提交者可见）
+     */
+    public PlanJob getJob(String jobId, Long userId) {
+        PlanJob job = jobs.get(jobId);
+        if (job == null || !job.getUserId().equals(userId)) {
+            return null;
+        }
+        return job;
+    }
+
+    private void run(PlanJob job, PlanGenerateRequest request) {
+        job.setStartTime(LocalDateTime.now());
+        job.setStatus(PlanJob.Status.RUNNING);
+        notifyUser(job);
+
+        // 结果和结束时间先于状态写入，读到结束状态的线程能看到完整结果
+        try {
+            StudyPlan plan = planService.generatePlan(job.getUserId(), request);
+            job.setPlan(plan);
+            job.setFinishTime(LocalDateTime.now());
+            job.setStatus(PlanJob.Status.SUCCEEDED);
+        } catch (Exception e) {
+            job.setError(e.getMessage());
+            job.setFinishTime(LocalDateTime.now());
+            job.setStatus(PlanJob.Status.FAILED);
+            System.err.println("计划生成任务失败: " + job.getJobId() + ", " + e.getMessage());
+        }
+        notifyUser(job);
+    }
+
+    /**
+     * 通过STOMP推送任务状态（需客户端已建立WebSocket连接并订阅 /user/queue/plan-jobs）
+     */
+    private void notifyUser(PlanJob job) {
+        try {
+            messagingTemplate.convertAndSendToUser(String.valueOf(job.getUserId()), "/queue/plan-jobs", job);
+        } catch (Exception e) {
+            System.err.println("推送计划生成任务状态失败: " + job.getJobId() + ", " + e.getMessage());
+        }
+    }
+
+    /**
+     * 定时清理已结束且超过保留时间的任务
+     */
+    @Scheduled(fixedRate = 60000)
+    public void cleanupFinishedJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishTime().isBefore(threshold));
+    }
+
+    /**
+     * 任务队列统计
+     */
+    public Map<String, Object> getStats() {
+        long running = jobs.values().stream().filter(job -> job.getStatus() == PlanJob.Status.RUNNING).count();
+        return Map.of(
+                "workers", workers,
+                "queueCapacity", queueCapacity,
+                "queued", executor.getQueue().size(),
+                "running", running,
+                "tracked", jobs.size());
+    }
+}
@@ -3,18 +3,33 @@ package com.studyplanner.service;
 import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.dto.PlanDetailWindow;
 import com.studyplanner.dto.PlanGenerateRequest;
 import com.studyplanner.entity.PlanDetail;
 import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.event.PlanDeletedEvent;
 import com.studyplanner.mapper.PlanDetailMapper;
 import com.studyplanner.mapper.PlanMapper;
+import com.studyplanner.service.llm.LLMStreamListener;
+import com.studyplanner.service.llm.PlanJsonSupport;
+import com.studyplanner.service.llm.PlanStreamParser;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 学习计划服务类
@@ -31,10 +46,36 @@ public class PlanService {
     @Autowired
     private LLMService llmService;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private PlanContentCache planContentCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private OutboundIoExecutor outboundIoExecutor;
+
+    // 每条批量插入语句包含的任务数
+    @Value("${plan.detail.batch-size:100}")
+    private int detailBatchSize;
+
+    // 分页查询每日任务的默认/最大条数，以及默认从今天往前包含的天数
+    @Value("${plan.detail.window-limit:30}")
+    private int windowLimit;
+
+    @Value("${plan.detail.max-window-limit:100}")
+    private int maxWindowLimit;
+
+    @Value("${plan.detail.window-before:3}")
+    private int windowBefore;
+
     /**
      * 生成学习计划（调用LLM - 登录用户使用系统配置）
+     * LLM调用与解析在事务之外完成，只有最终写库时才开启事务，避免长时间占用数据库连接
      */
-    @Transactional
     public StudyPlan generatePlan(Long userId, PlanGenerateRequest request) {
         // 调用LLM生成计划（使用系统配置，可选择模型）
         String llmResponse = llmService.generateStudyPlan(
@@ -43,7 +84,8 @@ public class PlanService {
                 request.getDailyHours().doubleValue(),
                 request.getTotalDays(),
                 request.getModelName(),
-                request.getLanguage());
+                request.getLanguage(),
+                !Boolean.TRUE.equals(request.getSkipCache()));
 
         // 解析LLM返回的JSON
         JSONObject planJson = parseLLMResponse(llmResponse);
@@ -67,12 +109,184 @@ public class PlanService {
         plan.setEndDate(LocalDate.now().plusDays(request.getTotalDays() - 1));
         plan.setStatus("进行中");
 
+        // 保存计划及每日任务（仅此处开启事务）
+        transactionTemplate.executeWithoutResult(status -> {
+            planMapper.insert(plan);
+            savePlanDetails(plan, planJson);
+        });
+
+        return plan;
+    }
+
+    /**
+     * 流式生成学习计划（登录用户）
+     * 先落库计划主记录，随后每解析出一天的任务就立即插入并通过SSE推送给客户端。
+     * 客户端断开后生成仍会继续，保证已创建的计划最终完整。
+     */
+    public void generatePlanStream(Long userId, PlanGenerateRequest request, SseEmitter emitter) {
+        String requestTitle = request.getTitle();
+        boolean useGeneratedTitle = requestTitle == null || requestTitle.trim().isEmpty();
+
+        StudyPlan plan = new StudyPlan();
+        plan.setUserId(userId);
+        // 标题尚未生成时先用学习目标占位，解析到LLM标题后再更新
+        plan.setTitle(useGeneratedTitle ? abbreviate(request.getGoal(), 100) : requestTitle);
+        plan.setGoal(request.getGoal());
+        plan.setLevel(request.getLevel());
+        plan.setDailyHours(request.getDailyHours());
+        plan.setTotalDays(request.getTotalDays());
+        plan.setStartDate(LocalDate.now());
+        plan.setEndDate(LocalDate.now().plusDays(request.getTotalDays() - 1));
+        plan.setStatus("进行中");
+
         planMapper.insert(plan);
+        sendEvent(emitter, "plan", plan);
 
-        // 解析并保存每日任务
-        savePlanDetails(plan, planJson);
+        PlanStreamParser parser = new PlanStreamParser();
+        Map<Integer, JSONObject> savedDays = new ConcurrentHashMap<>();
+        AtomicBoolean titleResolved = new AtomicBoolean(!useGeneratedTitle);
+        AtomicBoolean doneSent = new AtomicBoolean(false);
 
-        return plan;
+        llmService.streamStudyPlan(
+                request.getGoal(),
+                request.getLevel(),
+                request.getDailyHours().doubleValue(),
+                request.getTotalDays(),
+                request.getModelName(),
+                request.getLanguage(),
+                !Boolean.TRUE.equals(request.getSkipCache()),
+                new LLMStreamListener() {
+                    @Override
+                    public void onDelta(String content) {
+                        List<String> elements = parser.feed(content);
+
+                        if (!titleResolved.get() && parser.getTitle() != null) {
+                            titleResolved.set(true);
+                            plan.setTitle(abbreviate(parser.getTitle(), 100));
+                            planMapper.update(plan);
+                            sendEvent(emitter, "title", plan.getTitle());
+                        }
+
+                        for (String element : elements) {
+                            saveStreamedDay(PlanJsonSupport.toDayObject(element));
+                        }
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        if (savedDays.isEmpty()) {
+                            onError(new RuntimeException("未能从LLM响应中解析出每日任务"));
+                            return;
+                        }
+
+                        if (savedDays.size() >= request.getTotalDays()) {
+                            sendDone();
+                            return;
+                        }
+
+                        // 流被截断或漏掉部分天数时，仅续写缺失的天；
+                        // 续写是阻塞的LLM调用，交给外部I/O执行器，不占用OkHttp调度线程
+                        outboundIoExecutor.submit("llm", () -> {
+                            continueMissingDays();
+                            sendDone();
+                            return null;
+                        }).whenComplete((value, error) -> {
+                            if (error != null) {
+                                System.err.println("续写计划缺失天数失败: " + plan.getId() + ", " + error.getMessage());
+                                sendDone();
+                            }
+                        });
+                    }
+
+                    private void continueMissingDays() {
+                        try {
+                            List<JSONObject> continued = llmService.continueStudyPlan(
+                                    request.getGoal(),
+                                    request.getLevel(),
+                                    request.getDailyHours().doubleValue(),
+                                    request.getTotalDays(),
+                                    request.getModelName(),
+                                    request.getLanguage(),
+                                    parser.getTitle(),
+                                    parser.getSummary(),
+                                    savedDays);
+                            continued.forEach(this::saveStreamedDay);
+                        } catch (Exception e) {
+                            System.err.println("续写计划缺失天数失败: " + plan.getId() + ", " + e.getMessage());
+                        }
+                    }
+
+                    private void sendDone() {
+                        if (!doneSent.compareAndSet(false, true)) {
+                            return;
+                        }
+                        // 续写失败或仍有缺失时保留已生成的天数，在完成事件中标明缺失的天
+                        List<Integer> missingDays = new ArrayList<>();
+                        for (int day = 1; day <= request.getTotalDays(); day++) {
+                            if (!savedDays.containsKey(day)) {
+                                missingDays.add(day);
+                            }
+                        }
+
+                        Map<String, Object> result = new HashMap<>();
+                        result.put("planId", plan.getId());
+                        result.put("title", plan.getTitle());
+                        result.put("summary", parser.getSummary());
+                        result.put("days", savedDays.size());
+                        result.put("partial", !missingDays.isEmpty());
+                        result.put("missingDays", missingDays);
+                        sendEvent(emitter, "done", result);
+                        emitter.complete();
+                    }
+
+                    private void saveStreamedDay(JSONObject dayPlan) {
+                        int dayNumber = dayPlan.getIntValue("day");
+                        if (dayNumber < 1 || dayNumber > request.getTotalDays() || savedDays.containsKey(dayNumber)) {
+                            return;
+                        }
+                        PlanDetail detail = toPlanDetail(plan.getId(), dayPlan);
+                        planDetailMapper.insert(detail);
+                        planMapper.addTotalDetails(plan.getId(), 1);
+                        planContentCache.invalidate(plan.getId());
+                        savedDays.put(dayNumber, dayPlan);
+                        sendEvent(emitter, "day", detail);
+                    }
+
+                    @Override
+                    public void onError(Throwable error) {
+                        // 生成失败时清理已写入的部分数据，避免留下残缺计划
+                        try {
+                            planDetailMapper.deleteByPlanId(plan.getId());
+                            planMapper.delete(plan.getId());
+                            planContentCache.invalidate(plan.getId());
+                        } catch (Exception e) {
+                            System.err.println("清理残缺计划失败: " + plan.getId() + ", " + e.getMessage());
+                        }
+                        System.err.println("流式生成计划失败: " + plan.getId() + ", " + error.getMessage());
+
+                        sendEvent(emitter, "error", "计划生成失败: " + error.getMessage());
+                        emitter.complete();
+                    }
+                });
+    }
+
+    /**
+     * 推送SSE事件；客户端已断开时忽略发送失败
+     */
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (Exception e) {
+            // 客户端断开不影响后续生成与落库
+        }
+    }
+
+    private String abbreviate(String text, int maxLength) {
+        if (text == null) {
+            return "";
+        }
+        String trimmed = text.trim();
+        return trimmed.length() > maxLength ? trimmed.substring(0, maxLength) : trimmed;
     }
 
     /**
@@ -100,8 +314,15 @@ public class PlanService {
 
     /**
      * 解析LLM返回的响应
+     * 使用增量解析器逐个提取 dailyPlans 元素，响应被截断时保留所有完整的天
      */
     private JSONObject parseLLMResponse(String llmResponse) {
+        PlanStreamParser parser = new PlanStreamParser();
+        List<String> elements = parser.feed(llmResponse);
+        if (!elements.isEmpty()) {
+            return PlanJsonSupport.toPlanObject(parser, elements);
+        }
+
         // 尝试提取JSON部分（LLM可能返回额外文字）
         String jsonStr = llmResponse;
         int jsonStart = llmResponse.indexOf("{");
@@ -120,39 +341,48 @@ public class PlanService {
         if (dailyPlans == null)
             return;
 
+        List<PlanDetail> details = new ArrayList<>(dailyPlans.size());
         for (int i = 0; i < dailyPlans.size(); i++) {
-            JSONObject dayPlan = dailyPlans.getJSONObject(i);
-
-            PlanDetail detail = new PlanDetail();
-            detail.setPlanId(plan.getId());
-            detail.setDayNumber(dayPlan.getIntValue("day"));
-            detail.setContent(dayPlan.getString("content"));
-            detail.setDuration(BigDecimal.valueOf(dayPlan.getDoubleValue("duration")));
-            detail.setResources(
-                    dayPlan.getJSONArray("resources") != null ? dayPlan.getJSONArray("resources").toJSONString()
-                            : "[]");
-            detail.setIsCompleted(0);
+            details.add(toPlanDetail(plan.getId(), dailyPlans.getJSONObject(i)));
+        }
+        batchInsertDetails(details);
+        planMapper.addTotalDetails(plan.getId(), details.size());
+    }
 
-            planDetailMapper.insert(detail);
+    /**
+     * 按 plan.detail.batch-size 分块批量插入，365天的计划只需几次往返
+     */
+    private void batchInsertDetails(List<PlanDetail> details) {
+        int batchSize = Math.max(1, detailBatchSize);
+        for (int from = 0; from < details.size(); from += batchSize) {
+            planDetailMapper.batchInsert(details.subList(from, Math.min(details.size(), from + batchSize)));
         }
     }
 
+    /**
+     * 将LLM返回的单日计划转换为计划详情
+     */
+    private PlanDetail toPlanDetail(Long planId, JSONObject dayPlan) {
+        PlanDetail detail = new PlanDetail();
+        detail.setPlanId(planId);
+        detail.setDayNumber(dayPlan.getIntValue("day"));
+        detail.setContent(dayPlan.getString("content"));
+        detail.setDuration(BigDecimal.valueOf(dayPlan.getDoubleValue("duration")));
+        detail.setResources(
+                dayPlan.getJSONArray("resources") != null ? dayPlan.getJSONArray("resources").toJSONString()
+                        : "[]");
+        detail.setIsCompleted(0);
+        return detail;
+    }
+
     /**
      * 获取用户的所有计划
+     * 进度由计划行上的计数字段计算，"已完成"状态在打卡时随计数一起更新，列表只需一次查询
      */
     public List<StudyPlan> getUserPlans(Long userId) {
         List<StudyPlan> plans = planMapper.findByUserId(userId);
-        // 计算每个计划的进度，并检查是否需要更新状态
         for (StudyPlan plan : plans) {
-            double progress = getPlanProgress(plan.getId());
-            plan.setProgress(progress);
-            
-            // 如果进度达到100%且状态仍为"进行中"，自动更新为"已完成"
-            if (progress >= 100.0 && "进行中".equals(plan.getStatus())) {
-                updatePlanStatus(plan.getId(), "已完成");
-                plan.setStatus("已完成");
-                System.out.println("计划 " + plan.getId() + " 进度达到100%，已自动更新状态为'已完成'");
-            }
+            plan.setProgress(getPlanProgress(plan));
         }
         return plans;
     }
@@ -175,10 +405,43 @@ public class PlanService {
     }
 
     /**
-     * 获取计划的每日任务列表
+     * 获取计划的每日任务列表（内容和完成状态均来自缓存）
      */
     public List<PlanDetail> getPlanDetails(Long planId) {
-        return planDetailMapper.findByPlanId(planId);
+        PlanContentCache.PlanContent content = planContentCache.getContent(planId);
+        return content != null ? planContentCache.getDetails(content) : new ArrayList<>();
+    }
+
+    /**
+     * 分页获取计划及每日任务（计划信息和任务在同一次查询中返回）
+     *
+     * @param after   游标：返回该天之后的任务；为null时返回今天附近的任务
+     * @param before  没有游标时从今天往前包含的天数
+     * @param limit   本页最多返回的任务数
+     * @param summary 是否只返回摘要（不含 content 和 resources）
+     */
+    public PlanDetailWindow getPlanWindow(Long planId, Long userId, Integer after, Integer before, Integer limit,
+                                          boolean summary) {
+        int pageSize = Math.max(1, Math.min(maxWindowLimit, limit != null ? limit : windowLimit));
+        int daysBefore = Math.max(0, before != null ? before : windowBefore);
+        // 多取一条用于判断是否还有后续任务
+        PlanDetailWindow window = planMapper.findPlanWindow(planId, after, daysBefore, pageSize + 1, summary);
+        if (window == null || window.getPlan() == null) {
+            throw new IllegalArgumentException("计划不存在");
+        }
+        if (userId != null && !window.getPlan().getUserId().equals(userId)) {
+            throw new RuntimeException("无权访问该计划");
+        }
+
+        List<PlanDetail> details = window.getDetails();
+        boolean hasMore = details.size() > pageSize;
+        if (hasMore) {
+            window.setDetails(new ArrayList<>(details.subList(0, pageSize)));
+        }
+        window.setHasMore(hasMore);
+        window.setNextCursor(hasMore ? window.getDetails().get(pageSize - 1).getDayNumber() : null);
+        window.setProgress(getPlanProgress(window.getPlan()));
+        return window;
     }
 
     /**
@@ -197,35 +460,51 @@ public class PlanService {
 
         planDetailMapper.deleteByPlanId(planId);
         planMapper.delete(plan.getId());
+        // 事务提交后使计划内容缓存失效
+        eventPublisher.publishEvent(new PlanDeletedEvent(planId, plan.getUserId()));
     }
 
     /**
      * 获取今日任务
      */
     public PlanDetail getTodayTask(Long planId, Long userId) {
-        StudyPlan plan = validatePlanOwner(planId, userId);
+        // 所属用户、开始日期和总天数不会变化，与任务内容一起从缓存读取
+        PlanContentCache.PlanContent content = planContentCache.getContent(planId);
+        if (content == null) {
+            throw new IllegalArgumentException("计划不存在");
+        }
+        if (userId != null && !content.getUserId().equals(userId)) {
+            throw new RuntimeException("无权访问该计划");
+        }
 
         // 计算今天是计划的第几天
-        long dayNumber = LocalDate.now().toEpochDay() - plan.getStartDate().toEpochDay() + 1;
+        long dayNumber = LocalDate.now().toEpochDay() - content.getStartDate().toEpochDay() + 1;
 
-        if (dayNumber < 1 || dayNumber > plan.getTotalDays()) {
+        if (dayNumber < 1 || dayNumber > content.getTotalDays()) {
             return null;
         }
 
-        return planDetailMapper.findByPlanIdAndDay(planId, (int) dayNumber);
+        return planContentCache.getDetail(content, (int) dayNumber);
     }
 
     /**
      * 获取计划进度
      */
     public double getPlanProgress(Long planId) {
-        List<PlanDetail> details = planDetailMapper.findByPlanId(planId);
-        if (details.isEmpty()) {
+        StudyPlan plan = planMapper.findById(planId);
+        return plan != null ? getPlanProgress(plan) : 0;
+    }
+
+    /**
+     * 按计划行上的任务总数和完成数计算进度（百分比）
+     */
+    public double getPlanProgress(StudyPlan plan) {
+        int total = plan.getTotalDetails() != null ? plan.getTotalDetails() : 0;
+        if (total == 0) {
             return 0;
         }
-
-        int completed = planDetailMapper.countCompletedByPlanId(planId);
-        return (double) completed / details.size() * 100;
+        int completed = plan.getCompletedDays() != null ? plan.getCompletedDays() : 0;
+        return Math.min(100.0, (double) completed / total * 100);
     }
 
     /**
@@ -0,0 +1,89 @@
+package com.studyplanner.service;
+
+import com.studyplanner.event.PlanCheckedInEvent;
+import com.studyplanner.mapper.PlanMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计划状态流转服务
+ *
+ * 状态只在这里改变，查询接口不再写库：
+ * 打卡事务提交后检查该计划是否已全部完成（"进行中"/"已过期" → "已完成"）；
+ * 每晚的定时任务用两条批量UPDATE补齐遗漏的完成状态，并把超过结束日期仍未完成的计划标记为"已过期"。
+ */
+@Service
+public class PlanStatusService {
+
+    @Autowired
+    private PlanMapper planMapper;
+
+    @Value("${plan.status.expire-enabled:true}")
+    private boolean expireEnabled;
+
+    // 结束日期之后再保留的天数，超过后标记为"已过期"
+    @Value("${plan.status.expire-grace-days:0}")
+    private int expireGraceDays;
+
+    private final AtomicLong completedByEvent = new AtomicLong();
+    private final AtomicLong completedByJob = new AtomicLong();
+    private final AtomicLong expiredByJob = new AtomicLong();
+    private volatile LocalDateTime lastJobTime;
+
+    /**
+     * 打卡提交后检查计划是否已全部完成
+     * 事务回滚时不会收到事件；提交后更新失败的计划由夜间任务补齐
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onCheckedIn(PlanCheckedInEvent event) {
+        try {
+            if (planMapper.completeIfFinished(event.getPlanId()) > 0) {
+                completedByEvent.incrementAndGet();
+                System.out.println("计划 " + event.getPlanId() + " 进度达到100%，已自动更新状态为'已完成'");
+            }
+        } catch (Exception e) {
+            System.err.println("更新计划完成状态失败: " + event.getPlanId() + ", " + e.getMessage());
+        }
+    }
+
+    /**
+     * 每晚批量更新计划状态
+     */
+    @Scheduled(cron = "${plan.status.cron:0 10 0 * * ?}")
+    public void refreshStatuses() {
+        try {
+            int completed = planMapper.completeFinishedPlans();
+            completedByJob.addAndGet(completed);
+            int expired = 0;
+            if (expireEnabled) {
+                expired = planMapper.expirePlans(LocalDate.now().minusDays(expireGraceDays));
+                expiredByJob.addAndGet(expired);
+            }
+            lastJobTime = LocalDateTime.now();
+            System.out.println("计划状态更新完成：已完成 " + completed + " 个，已过期 " + expired + " 个");
+        } catch (Exception e) {
+            System.err.println("批量更新计划状态失败: " + e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("expireEnabled", expireEnabled);
+        stats.put("expireGraceDays", expireGraceDays);
+        stats.put("completedByEvent", completedByEvent.get());
+        stats.put("completedByJob", completedByJob.get());
+        stats.put("expiredByJob", expiredByJob.get());
+        stats.put("lastJobTime", lastJobTime != null ? lastJobTime.toString() : null);
+        return stats;
+    }
+}
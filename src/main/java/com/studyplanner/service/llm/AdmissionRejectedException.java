@@ -0,0 +1,20 @@
+package com.studyplanner.service.llm;
+
+/**
+ * LLM请求被准入控制拒绝（超出并发或速率限制），附带建议的重试等待秒数
+ */
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public AdmissionRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
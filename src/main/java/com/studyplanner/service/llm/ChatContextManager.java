@@ -0,0 +1,311 @@
+package com.studyplanner.service.llm;
+
+import com.studyplanner.service.LLMService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 多轮对话上下文管理
+ *
+ * 按估算的token数保留最近的对话轮次（滑动窗口），更早的轮次折叠为滚动摘要，
+ * 摘要按 调用方（用户ID或IP）+ API地址/Key/模型 + 会话ID 缓存，后续请求只需对新滑出窗口的轮次做增量摘要；
+ * 其他调用方即使使用相同的会话ID也读不到该摘要。会话数达到 max-conversations 时淘汰最久未使用的会话。
+ * 窗口超过 max-window-tokens 时一次性收缩到 target-window-tokens，避免每轮都触发摘要。
+ */
+@Component
+public class ChatContextManager {
+
+    @Autowired
+    private LLMService llmService;
+
+    @Value("${llm.context.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.context.max-window-tokens:3000}")
+    private int maxWindowTokens;
+
+    @Value("${llm.context.target-window-tokens:1500}")
+    private int targetWindowTokens;
+
+    @Value("${llm.context.summary-max-tokens:512}")
+    private int summaryMaxTokens;
+
+    @Value("${llm.context.max-conversations:5000}")
+    private int maxConversations;
+
+    @Value("${llm.context.ttl-minutes:120}")
+    private long ttlMinutes;
+
+    // 每条消息的固定开销（角色标记等）
+    private static final int MESSAGE_OVERHEAD_TOKENS = 4;
+
+    // accessOrder=true：队首即最久未使用，由自身加锁保护
+    private final LinkedHashMap<String, ConversationSummary> summaries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong compactedRequests = new AtomicLong();
+    private final AtomicLong summaryCalls = new AtomicLong();
+    private final AtomicLong summaryFailures = new AtomicLong();
+    private final AtomicLong savedTokens = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * 会话的滚动摘要：covered 为已折叠进摘要的对话消息数，fingerprint（被折叠消息的SHA-256）用于确认客户端历史未被改写
+     */
+    private static class ConversationSummary {
+        final String summary;
+        final int covered;
+        final String fingerprint;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        ConversationSummary(String summary, int covered, String fingerprint) {
+            this.summary = summary;
+            this.covered = covered;
+            this.fingerprint = fingerprint;
+        }
+    }
+
+    /**
+     * 构建发送给LLM的消息列表：系统消息 + 摘要 + 最近的对话窗口
+     * 需要生成摘要时异步调用LLM；摘要失败时退化为只保留窗口
+     *
+     * @param principal      调用方标识（user:用户ID 或 ip:地址）
+     * @param conversationId 会话ID，为空时只做窗口截断，不生成摘要
+     */
+    public CompletableFuture<List<Map<String, String>>> prepare(String principal, String conversationId,
+                                                                String baseUrl, String apiKey, String model,
+                                                                List<Map<String, String>> messages) {
+        if (!enabled || messages.isEmpty()) {
+            return CompletableFuture.completedFuture(messages);
+        }
+
+        List<Map<String, String>> system = new ArrayList<>();
+        List<Map<String, String>> turns = new ArrayList<>();
+        for (Map<String, String> message : messages) {
+            ("system".equals(message.get("role")) ? system : turns).add(message);
+        }
+
+        int covered = 0;
+        String summary = null;
+        boolean hasId = conversationId != null && !conversationId.isEmpty();
+        String key = hasId ? digest(List.of(principal, baseUrl, apiKey, model, conversationId)) : null;
+        ConversationSummary cached = null;
+        if (hasId) {
+            synchronized (summaries) {
+                cached = summaries.get(key);
+            }
+        }
+        if (cached != null && cached.covered <= turns.size()
+                && cached.fingerprint.equals(fingerprint(turns.subList(0, cached.covered)))) {
+            cached.lastAccess = System.currentTimeMillis();
+            covered = cached.covered;
+            summary = cached.summary;
+        }
+
+        if (countTokens(turns, covered) <= maxWindowTokens) {
+            return CompletableFuture.completedFuture(assemble(messages, system, summary, turns, covered));
+        }
+
+        int cut = cutPoint(turns, covered);
+        if (cut <= covered) {
+            return CompletableFuture.completedFuture(assemble(messages, system, summary, turns, covered));
+        }
+        if (!hasId) {
+            return CompletableFuture.completedFuture(assemble(messages, system, null, turns, cut));
+        }
+
+        String previousSummary = summary;
+        summaryCalls.incrementAndGet();
+        CompletableFuture<String> summaryCall = llmService.chatAsync(baseUrl, apiKey, model,
+                List.of(Map.of("role", "user", "content",
+                        buildSummaryPrompt(previousSummary, turns.subList(covered, cut)))),
+                summaryMaxTokens, LLMMetrics.SUMMARY);
+        CompletableFuture<List<Map<String, String>>> prepared = summaryCall
+                .thenApply(newSummary -> {
+                    store(key, new ConversationSummary(newSummary, cut, fingerprint(turns.subList(0, cut))));
+                    return assemble(messages, system, newSummary, turns, cut);
+                })
+                .exceptionally(error -> {
+                    summaryFailures.incrementAndGet();
+                    System.err.println("对话摘要生成失败，仅保留最近的对话: " + error.getMessage());
+                    return assemble(messages, system, previousSummary, turns, cut);
+                });
+        // 调用方取消（请求超时、客户端断开）时取消摘要请求，thenApply 得到的 future 被取消不会向上传递
+        prepared.whenComplete((result, error) -> {
+            if (prepared.isCancelled()) {
+                summaryCall.cancel(true);
+            }
+        });
+        return prepared;
+    }
+
+    /**
+     * 保存会话摘要，超出 max-conversations 时淘汰最久未使用的会话
+     */
+    private void store(String key, ConversationSummary summary) {
+        synchronized (summaries) {
+            summaries.put(key, summary);
+            Iterator<ConversationSummary> it = summaries.values().iterator();
+            while (summaries.size() > maxConversations && it.hasNext()) {
+                it.next();
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 被折叠消息的指纹：依次对每条消息的角色和内容（带长度前缀）做SHA-256
+     */
+    private static String fingerprint(List<Map<String, String>> turns) {
+        List<String> parts = new ArrayList<>(turns.size() * 2);
+        for (Map<String, String> message : turns) {
+            parts.add(message.get("role"));
+            parts.add(message.get("content"));
+        }
+        return digest(parts);
+    }
+
+    private static String digest(List<String> parts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : parts) {
+                byte[] bytes = (part != null ? part : "").getBytes(StandardCharsets.UTF_8);
+                digest.update((bytes.length + ":").getBytes(StandardCharsets.UTF_8));
+                digest.update(bytes);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 找到窗口起点：从末尾向前累加，保证窗口不超过 target-window-tokens，且至少保留最后一条消息
+     */
+    private int cutPoint(List<Map<String, String>> turns, int from) {
+        int tokens = 0;
+        int cut = turns.size();
+        while (cut > from) {
+            int messageTokens = countTokens(turns.get(cut - 1));
+            if (cut < turns.size() && tokens + messageTokens > targetWindowTokens) {
+                break;
+            }
+            tokens += messageTokens;
+            cut--;
+        }
+        // 窗口从用户消息开始，避免以孤立的助手回复开头
+        while (cut < turns.size() - 1 && !"user".equals(turns.get(cut).get("role"))) {
+            cut++;
+        }
+        return cut;
+    }
+
+    private List<Map<String, String>> assemble(List<Map<String, String>> original, List<Map<String, String>> system,
+                                               String summary, List<Map<String, String>> turns, int from) {
+        if (summary == null && from == 0) {
+            return original;
+        }
+
+        List<Map<String, String>> result = new ArrayList<>(system);
+        if (summary != null && !summary.isBlank()) {
+            result.add(Map.of("role", "system", "content", "以下是之前对话的摘要，请结合摘要继续对话：\n" + summary));
+        }
+        result.addAll(turns.subList(from, turns.size()));
+
+        compactedRequests.incrementAndGet();
+        savedTokens.addAndGet(Math.max(0, countTokens(original, 0) - countTokens(result, 0)));
+        return result;
+    }
+
+    private String buildSummaryPrompt(String previousSummary, List<Map<String, String>> dropped) {
+        StringBuilder prompt = new StringBuilder();
+        prompt.append("请将下面的对话内容压缩为一段简洁的摘要，保留用户的学习目标、关键问题、已给出的结论和尚未解决的问题，");
+        prompt.append("不超过300字，只输出摘要内容。\n\n");
+        if (previousSummary != null && !previousSummary.isBlank()) {
+            prompt.append("【已有摘要】\n").append(previousSummary).append("\n\n");
+        }
+        prompt.append("【新增对话】\n");
+        for (Map<String, String> message : dropped) {
+            prompt.append("user".equals(message.get("role")) ? "用户：" : "助手：")
+                    .append(message.get("content"))
+                    .append('\n');
+        }
+        return prompt.toString();
+    }
+
+    private int countTokens(List<Map<String, String>> messages, int from) {
+        int tokens = 0;
+        for (int i = from; i < messages.size(); i++) {
+            tokens += countTokens(messages.get(i));
+        }
+        return tokens;
+    }
+
+    private int countTokens(Map<String, String> message) {
+        return estimateTokens(message.get("content")) + MESSAGE_OVERHEAD_TOKENS;
+    }
+
+    /**
+     * 估算文本的token数：汉字等CJK字符约1个token，其他字符约4个字符1个token
+     */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+                cjk++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return cjk + (other + 3) / 4;
+    }
+
+    /**
+     * 清理长时间未访问的会话摘要
+     */
+    @Scheduled(fixedRate = 600000)
+    public void cleanupExpired() {
+        long threshold = System.currentTimeMillis() - ttlMinutes * 60000;
+        synchronized (summaries) {
+            summaries.values().removeIf(summary -> summary.lastAccess < threshold);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (summaries) {
+            stats.put("conversations", summaries.size());
+        }
+        stats.put("maxConversations", maxConversations);
+        stats.put("evictions", evictions.get());
+        stats.put("compactedRequests", compactedRequests.get());
+        stats.put("summaryCalls", summaryCalls.get());
+        stats.put("summaryFailures", summaryFailures.get());
+        stats.put("savedTokens", savedTokens.get());
+        return stats;
+    }
+}
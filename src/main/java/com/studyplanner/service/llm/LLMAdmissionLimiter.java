@@ -0,0 +1,302 @@
+package com.studyplanner.service.llm;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LLM请求准入控制
+ *
+ * 每个客户端（登录用户按用户ID，游客按IP）有独立的并发上限和令牌桶速率限制，超出时立即拒绝并给出重试等待时间；
+ * 全局并发名额用完时，登录用户与游客分别进入各自的等待队列，按权重轮流获得释放的名额，
+ * 队列已满或等待超时同样立即拒绝，避免过载表现为请求超时。
+ */
+@Component
+public class LLMAdmissionLimiter {
+
+    @Value("${llm.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.admission.max-concurrent:32}")
+    private int maxConcurrent;
+
+    @Value("${llm.admission.max-wait-ms:5000}")
+    private long maxWaitMs;
+
+    @Value("${llm.admission.retry-after-seconds:5}")
+    private long retryAfterSeconds;
+
+    // 登录用户
+    @Value("${llm.admission.member.max-concurrent:2}")
+    private int memberMaxConcurrent;
+
+    @Value("${llm.admission.member.rate-per-minute:10}")
+    private double memberRatePerMinute;
+
+    @Value("${llm.admission.member.burst:5}")
+    private double memberBurst;
+
+    @Value("${llm.admission.member.weight:4}")
+    private int memberWeight;
+
+    @Value("${llm.admission.member.queue-capacity:100}")
+    private int memberQueueCapacity;
+
+    // 游客（按IP限制）
+    @Value("${llm.admission.guest.max-concurrent:1}")
+    private int guestMaxConcurrent;
+
+    @Value("${llm.admission.guest.rate-per-minute:3}")
+    private double guestRatePerMinute;
+
+    @Value("${llm.admission.guest.burst:3}")
+    private double guestBurst;
+
+    @Value("${llm.admission.guest.weight:1}")
+    private int guestWeight;
+
+    @Value("${llm.admission.guest.queue-capacity:20}")
+    private int guestQueueCapacity;
+
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    // 全局名额与等待队列，均由 lock 保护
+    private final Object lock = new Object();
+    private int availableSlots;
+    private final ArrayDeque<Waiter> memberQueue = new ArrayDeque<>();
+    private final ArrayDeque<Waiter> guestQueue = new ArrayDeque<>();
+    private int memberCredits;
+    private int guestCredits;
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong rateLimited = new AtomicLong();
+    private final AtomicLong concurrencyLimited = new AtomicLong();
+    private final AtomicLong overloaded = new AtomicLong();
+
+    private static class Waiter {
+        boolean granted;
+    }
+
+    /**
+     * 令牌桶：按速率持续补充令牌，容量为 burst
+     */
+    private static class TokenBucket {
+        final double capacity;
+        final double tokensPerMs;
+        double tokens;
+        long lastRefill;
+
+        TokenBucket(double capacity, double ratePerMinute) {
+            this.capacity = capacity;
+            this.tokensPerMs = ratePerMinute / 60000.0;
+            this.tokens = capacity;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        /**
+         * 尝试取一个令牌，成功返回0，否则返回需等待的毫秒数
+         */
+        synchronized long tryTake() {
+            refill();
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / tokensPerMs);
+        }
+
+        synchronized boolean isFull() {
+            refill();
+            return tokens >= capacity;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerMs);
+            lastRefill = now;
+        }
+    }
+
+    /**
+     * 准入许可，请求结束后必须释放（可重复调用）
+     */
+    public class Permit {
+        private final AtomicInteger clientInFlight;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Permit(AtomicInteger clientInFlight) {
+            this.clientInFlight = clientInFlight;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                clientInFlight.decrementAndGet();
+                releaseSlot();
+            }
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        availableSlots = maxConcurrent;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 申请准入许可：依次检查速率、客户端并发和全局名额，不满足时抛出 AdmissionRejectedException
+     *
+     * @param clientKey 客户端标识（user:用户ID 或 ip:地址）
+     * @param member    是否为登录用户
+     */
+    public Permit acquire(String clientKey, boolean member) {
+        long waitMs = buckets.computeIfAbsent(clientKey, k -> member
+                ? new TokenBucket(memberBurst, memberRatePerMinute)
+                : new TokenBucket(guestBurst, guestRatePerMinute)).tryTake();
+        if (waitMs > 0) {
+            rateLimited.incrementAndGet();
+            throw new AdmissionRejectedException("请求过于频繁，请稍后重试", (waitMs + 999) / 1000);
+        }
+
+        int limit = member ? memberMaxConcurrent : guestMaxConcurrent;
+        AtomicInteger counter = inFlight.computeIfAbsent(clientKey, k -> new AtomicInteger());
+        if (counter.incrementAndGet() > limit) {
+            counter.decrementAndGet();
+            concurrencyLimited.incrementAndGet();
+            throw new AdmissionRejectedException("已有请求正在处理中，请等待完成后再试", retryAfterSeconds);
+        }
+
+        try {
+            acquireSlot(member);
+        } catch (RuntimeException e) {
+            counter.decrementAndGet();
+            throw e;
+        }
+        admitted.incrementAndGet();
+        return new Permit(counter);
+    }
+
+    /**
+     * 申请全局名额，名额用完时在调用线程上排队等待
+     * 调用方是拦截器的 preHandle，等待期间会占用一个Tomcat请求线程；这里有意保持同步等待：
+     * 等待时间不超过 max-wait-ms（默认5秒），同时等待的线程数不超过两个队列容量之和（默认120，小于Tomcat默认的200个线程），
+     * 超出的请求直接拒绝，因此排队不会耗尽请求线程。调大队列容量或等待时间时需同步调整 server.tomcat.threads.max
+     */
+    private void acquireSlot(boolean member) {
+        synchronized (lock) {
+            if (availableSlots > 0 && memberQueue.isEmpty() && guestQueue.isEmpty()) {
+                availableSlots--;
+                return;
+            }
+
+            ArrayDeque<Waiter> queue = member ? memberQueue : guestQueue;
+            if (queue.size() >= (member ? memberQueueCapacity : guestQueueCapacity)) {
+                overloaded.incrementAndGet();
+                throw new AdmissionRejectedException("AI服务繁忙，请稍后重试", retryAfterSeconds);
+            }
+
+            Waiter waiter = new Waiter();
+            queue.addLast(waiter);
+            queued.incrementAndGet();
+            long deadline = System.currentTimeMillis() + maxWaitMs;
+            try {
+                while (!waiter.granted) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        queue.remove(waiter);
+                        overloaded.incrementAndGet();
+                        throw new AdmissionRejectedException("AI服务繁忙，请稍后重试", retryAfterSeconds);
+                    }
+                    lock.wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.granted) {
+                    releaseSlot();
+                } else {
+                    queue.remove(waiter);
+                }
+                throw new AdmissionRejectedException("请求已取消", retryAfterSeconds);
+            }
+        }
+    }
+
+    /**
+     * 释放一个全局名额：有等待者时按权重直接移交给下一个等待者
+     */
+    private void releaseSlot() {
+        synchronized (lock) {
+            Waiter next = pollNextWaiter();
+            if (next == null) {
+                availableSlots++;
+                return;
+            }
+            next.granted = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 加权轮转：每轮登录用户队列最多出队 memberWeight 个，游客队列最多 guestWeight 个
+     */
+    private Waiter pollNextWaiter() {
+        if (memberQueue.isEmpty()) {
+            return guestQueue.pollFirst();
+        }
+        if (guestQueue.isEmpty()) {
+            return memberQueue.pollFirst();
+        }
+        if (memberCredits <= 0 && guestCredits <= 0) {
+            memberCredits = memberWeight;
+            guestCredits = guestWeight;
+        }
+        if (memberCredits > 0) {
+            memberCredits--;
+            return memberQueue.pollFirst();
+        }
+        guestCredits--;
+        return guestQueue.pollFirst();
+    }
+
+    /**
+     * 清理已回满且没有在途请求的客户端状态
+     */
+    @Scheduled(fixedRate = 600000)
+    public void cleanupIdleClients() {
+        buckets.entrySet().removeIf(entry -> {
+            AtomicInteger counter = inFlight.get(entry.getKey());
+            return entry.getValue().isFull() && (counter == null || counter.get() == 0);
+        });
+        inFlight.entrySet().removeIf(entry -> entry.getValue().get() == 0 && !buckets.containsKey(entry.getKey()));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (lock) {
+            stats.put("availableSlots", availableSlots);
+            stats.put("memberQueue", memberQueue.size());
+            stats.put("guestQueue", guestQueue.size());
+        }
+        stats.put("enabled", enabled);
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("admitted", admitted.get());
+        stats.put("queued", queued.get());
+        stats.put("rateLimited", rateLimited.get());
+        stats.put("concurrencyLimited", concurrencyLimited.get());
+        stats.put("overloaded", overloaded.get());
+        return stats;
+    }
+}
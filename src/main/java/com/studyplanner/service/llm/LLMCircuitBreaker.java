@@ -0,0 +1,300 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LLM调用熔断器，按 (baseUrl, model) 分别统计
+ *
+ * 在最近 window-size 次调用中，失败或超过 slow-call-ms 的慢调用占比达到阈值时打开熔断，
+ * 打开期间直接拒绝请求；open-seconds 后进入半开状态，只放行一个探测请求，
+ * 探测成功则关闭熔断，失败则重新打开。
+ * 系统API的已配置模型常驻；访客自定义API和未配置的模型名由客户端决定，放在按LRU淘汰的有界表中，
+ * 统计中也不暴露其地址。
+ */
+@Component
+public class LLMCircuitBreaker {
+
+    @Value("${llm.circuit-breaker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${llm.circuit-breaker.minimum-calls:5}")
+    private int minimumCalls;
+
+    @Value("${llm.circuit-breaker.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${llm.circuit-breaker.slow-call-ms:90000}")
+    private long slowCallMs;
+
+    @Value("${llm.circuit-breaker.open-seconds:30}")
+    private long openSeconds;
+
+    // 访客及未配置模型的熔断状态最多保留的数量
+    @Value("${llm.circuit-breaker.max-guest-circuits:1000}")
+    private int maxGuestCircuits;
+
+    @Value("${llm.api.base-url:}")
+    private String systemBaseUrl;
+
+    @Value("${llm.api.model:Qwen/Qwen3-8B}")
+    private String defaultModel;
+
+    @Value("${llm.api.available-models:Qwen/Qwen3-8B,THUDM/GLM-4-9B-0414,deepseek-ai/DeepSeek-V3}")
+    private String availableModels;
+
+    private volatile Set<String> systemModels;
+
+    // 系统API已配置模型的熔断状态，按模型名
+    private final ConcurrentHashMap<String, Circuit> systemCircuits = new ConcurrentHashMap<>();
+
+    // 其余 (baseUrl, model) 的熔断状态，accessOrder=true：队首即最久未使用
+    private final LinkedHashMap<String, Circuit> guestCircuits = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong guestEvictions = new AtomicLong();
+
+    private final AtomicLong rejectedCalls = new AtomicLong();
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * 单个 (baseUrl, model) 的熔断状态，最近的调用结果保存在环形窗口中
+     */
+    private class Circuit {
+        final boolean[] failed = new boolean[windowSize];
+        int count;
+        int next;
+        int failures;
+        State state = State.CLOSED;
+        long openedAt;
+        long probeStartedAt;
+        boolean probeInFlight;
+
+        synchronized boolean allowRequest(long now) {
+            if (state == State.OPEN) {
+                if (now - openedAt < openSeconds * 1000) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+            }
+            if (state == State.HALF_OPEN) {
+                // 探测请求超过慢调用阈值仍未返回时，允许再发一个
+                if (probeInFlight && now - probeStartedAt < slowCallMs) {
+                    return false;
+                }
+                probeInFlight = true;
+                probeStartedAt = now;
+            }
+            return true;
+        }
+
+        synchronized void record(boolean failure, long now) {
+            if (state == State.HALF_OPEN) {
+                if (failure) {
+                    open(now);
+                } else {
+                    state = State.CLOSED;
+                    reset();
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                return;
+            }
+
+            if (count == windowSize) {
+                if (failed[next]) {
+                    failures--;
+                }
+            } else {
+                count++;
+            }
+            failed[next] = failure;
+            if (failure) {
+                failures++;
+            }
+            next = (next + 1) % windowSize;
+
+            if (count >= minimumCalls && (double) failures / count >= failureRateThreshold) {
+                open(now);
+            }
+        }
+
+        synchronized void release() {
+            probeInFlight = false;
+        }
+
+        synchronized boolean isOpen(long now) {
+            return state == State.OPEN && now - openedAt < openSeconds * 1000;
+        }
+
+        private void open(long now) {
+            state = State.OPEN;
+            openedAt = now;
+            probeInFlight = false;
+            reset();
+        }
+
+        private void reset() {
+            count = 0;
+            next = 0;
+            failures = 0;
+            Arrays.fill(failed, false);
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new HashMap<>();
+            stats.put("state", state.name());
+            stats.put("calls", count);
+            stats.put("failures", failures);
+            return stats;
+        }
+    }
+
+    private boolean isSystemModel(String baseUrl, String model) {
+        Set<String> models = systemModels;
+        if (models == null) {
+            models = new HashSet<>();
+            models.add(defaultModel.trim());
+            for (String available : availableModels.split(",")) {
+                models.add(available.trim());
+            }
+            systemModels = models;
+        }
+        return systemBaseUrl.equals(baseUrl) && models.contains(model);
+    }
+
+    private Circuit circuit(String baseUrl, String model) {
+        if (isSystemModel(baseUrl, model)) {
+            return systemCircuits.computeIfAbsent(model, k -> new Circuit());
+        }
+        String key = baseUrl + "|" + model;
+        synchronized (guestCircuits) {
+            Circuit circuit = guestCircuits.get(key);
+            if (circuit == null) {
+                circuit = new Circuit();
+                guestCircuits.put(key, circuit);
+                if (guestCircuits.size() > maxGuestCircuits) {
+                    guestCircuits.remove(guestCircuits.keySet().iterator().next());
+                    guestEvictions.incrementAndGet();
+                }
+            }
+            return circuit;
+        }
+    }
+
+    /**
+     * 查询已有的熔断状态，不存在时返回null（不创建）
+     */
+    private Circuit existing(String baseUrl, String model) {
+        if (isSystemModel(baseUrl, model)) {
+            return systemCircuits.get(model);
+        }
+        synchronized (guestCircuits) {
+            return guestCircuits.get(baseUrl + "|" + model);
+        }
+    }
+
+    /**
+     * 是否允许向该模型发起请求（熔断打开时返回false）
+     */
+    public boolean allowRequest(String baseUrl, String model) {
+        if (!enabled) {
+            return true;
+        }
+        boolean allowed = circuit(baseUrl, model).allowRequest(System.currentTimeMillis());
+        if (!allowed) {
+            rejectedCalls.incrementAndGet();
+        }
+        return allowed;
+    }
+
+    /**
+     * 熔断是否处于打开状态（只读，不占用半开状态的探测名额，供路由预筛选使用）
+     */
+    public boolean isOpen(String baseUrl, String model) {
+        if (!enabled) {
+            return false;
+        }
+        Circuit circuit = existing(baseUrl, model);
+        return circuit != null && circuit.isOpen(System.currentTimeMillis());
+    }
+
+    /**
+     * 记录一次调用结果
+     *
+     * @param failure   是否为服务商故障（网络错误、5xx、429），请求本身的错误不计入
+     * @param latencyMs 调用耗时，超过 slow-call-ms 视为慢调用
+     */
+    public void record(String baseUrl, String model, boolean failure, long latencyMs) {
+        if (!enabled) {
+            return;
+        }
+        circuit(baseUrl, model).record(failure || latencyMs >= slowCallMs, System.currentTimeMillis());
+    }
+
+    /**
+     * 调用被主动取消，不计入统计，仅释放半开状态的探测名额
+     */
+    public void release(String baseUrl, String model) {
+        if (!enabled) {
+            return;
+        }
+        Circuit circuit = existing(baseUrl, model);
+        if (circuit != null) {
+            circuit.release();
+        }
+    }
+
+    /**
+     * 根据HTTP状态码判断是否为服务商故障
+     */
+    public static boolean isProviderFailure(int statusCode) {
+        return statusCode >= 500 || statusCode == 429;
+    }
+
+    /**
+     * 系统模型按模型名列出状态；访客熔断只给出数量，不暴露访客的API地址
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> states = new HashMap<>();
+        systemCircuits.forEach((model, circuit) -> states.put(model, circuit.stats()));
+
+        long now = System.currentTimeMillis();
+        int guestCount;
+        int guestOpen = 0;
+        synchronized (guestCircuits) {
+            guestCount = guestCircuits.size();
+            for (Circuit circuit : guestCircuits.values()) {
+                if (circuit.isOpen(now)) {
+                    guestOpen++;
+                }
+            }
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("rejectedCalls", rejectedCalls.get());
+        stats.put("circuits", states);
+        stats.put("guestCircuits", guestCount);
+        stats.put("guestOpenCircuits", guestOpen);
+        stats.put("maxGuestCircuits", maxGuestCircuits);
+        stats.put("guestEvictions", guestEvictions.get());
+        return stats;
+    }
+}
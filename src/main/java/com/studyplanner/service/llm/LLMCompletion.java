@@ -0,0 +1,39 @@
+package com.studyplanner.service.llm;
+
+import lombok.Data;
+
+/**
+ * 一次非流式LLM调用的结果
+ */
+@Data
+public class LLMCompletion {
+
+    /**
+     * 实际产生结果的模型（熔断降级或对冲时可能与请求的模型不同）
+     */
+    private String model;
+
+    /**
+     * 回复内容
+     */
+    private String content;
+
+    /**
+     * 结束原因（stop/length等），length 表示因 max_tokens 被截断
+     */
+    private String finishReason;
+
+    /**
+     * 输入token数（服务端未返回usage时为0）
+     */
+    private int promptTokens;
+
+    /**
+     * 输出token数（服务端未返回usage时为0）
+     */
+    private int completionTokens;
+
+    public boolean isTruncated() {
+        return "length".equals(finishReason);
+    }
+}
@@ -0,0 +1,146 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 对冲请求策略
+ *
+ * 按模型统计最近的首字节耗时，取指定分位数作为对冲延迟；主请求超过该延迟仍未收到响应时，
+ * 可向备选模型发送一个重复请求。对冲额度按主请求数的 budget-ratio 累积，
+ * 保证额外请求占比不超过该比例。
+ */
+@Component
+public class LLMHedgingPolicy {
+
+    @Value("${llm.hedging.enabled:false}")
+    private boolean enabled;
+
+    @Value("${llm.hedging.percentile:0.95}")
+    private double percentile;
+
+    @Value("${llm.hedging.min-samples:20}")
+    private int minSamples;
+
+    @Value("${llm.hedging.sample-size:200}")
+    private int sampleSize;
+
+    @Value("${llm.hedging.min-delay-ms:1000}")
+    private long minDelayMs;
+
+    @Value("${llm.hedging.budget-ratio:0.05}")
+    private double budgetRatio;
+
+    @Value("${llm.hedging.max-burst:5}")
+    private double maxBurst;
+
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    // 可用的对冲额度，每个主请求累积 budgetRatio，每次对冲消耗 1
+    private double credits = 0;
+
+    private final AtomicLong primaryCalls = new AtomicLong();
+    private final AtomicLong hedgedCalls = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetRejected = new AtomicLong();
+
+    /**
+     * 最近 sampleSize 次首字节耗时（毫秒）的环形窗口
+     */
+    private class LatencyWindow {
+        final long[] samples = new long[sampleSize];
+        int count;
+        int next;
+
+        synchronized void add(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) {
+                count++;
+            }
+        }
+
+        synchronized long percentile(double p) {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(p * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 对冲延迟：该模型首字节耗时的分位数，样本不足时返回-1（不对冲）
+     */
+    public long hedgeDelayMs(String model) {
+        LatencyWindow window = latencies.get(model);
+        long delay = window != null ? window.percentile(percentile) : -1;
+        return delay < 0 ? -1 : Math.max(minDelayMs, delay);
+    }
+
+    /**
+     * 记录一次请求的首字节耗时
+     */
+    public void recordFirstByte(String model, long latencyMs) {
+        latencies.computeIfAbsent(model, k -> new LatencyWindow()).add(latencyMs);
+    }
+
+    /**
+     * 发起主请求，累积对冲额度
+     */
+    public synchronized void recordPrimary() {
+        primaryCalls.incrementAndGet();
+        credits = Math.min(maxBurst, credits + budgetRatio);
+    }
+
+    /**
+     * 申请一次对冲，额度不足时返回false
+     */
+    public synchronized boolean tryAcquireHedge() {
+        if (credits < 1) {
+            budgetRejected.incrementAndGet();
+            return false;
+        }
+        credits -= 1;
+        hedgedCalls.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 申请到额度后未能发出对冲（没有可用的备选模型），退还额度
+     */
+    public synchronized void refundHedge() {
+        credits = Math.min(maxBurst, credits + 1);
+        hedgedCalls.decrementAndGet();
+    }
+
+    public void recordHedgeWin() {
+        hedgeWins.incrementAndGet();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> delays = new HashMap<>();
+        latencies.keySet().forEach(model -> delays.put(model, hedgeDelayMs(model)));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("primaryCalls", primaryCalls.get());
+        stats.put("hedgedCalls", hedgedCalls.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("budgetRejected", budgetRejected.get());
+        stats.put("hedgeDelayMs", delays);
+        return stats;
+    }
+}
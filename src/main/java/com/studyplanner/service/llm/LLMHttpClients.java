@@ -0,0 +1,160 @@
+package com.studyplanner.service.llm;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LLM服务商HTTP客户端池
+ *
+ * 系统配置（登录用户）与访客自定义API各用一个OkHttpClient，分别配置调度器并发上限、
+ * 连接池、keep-alive、HTTP/2 和超时，访客流量不会占满系统服务商的连接和并发。
+ * 注意：调度器的并发上限只约束异步调用（流式请求），同步调用不排队，但计入在途数。
+ * 开启录制/回放（llm.record-replay.mode）时两个客户端都挂载录制回放拦截器。
+ */
+@Component
+public class LLMHttpClients {
+
+    @Value("${llm.api.base-url:}")
+    private String systemBaseUrl;
+
+    @Value("${llm.api.api-key:}")
+    private String systemApiKey;
+
+    // 系统服务商
+    @Value("${llm.http.system.max-requests:128}")
+    private int systemMaxRequests;
+
+    @Value("${llm.http.system.max-requests-per-host:64}")
+    private int systemMaxRequestsPerHost;
+
+    @Value("${llm.http.system.max-idle-connections:32}")
+    private int systemMaxIdleConnections;
+
+    @Value("${llm.http.system.keep-alive-seconds:300}")
+    private long systemKeepAliveSeconds;
+
+    @Value("${llm.http.system.http2:true}")
+    private boolean systemHttp2;
+
+    @Value("${llm.http.system.connect-timeout-seconds:10}")
+    private long systemConnectTimeout;
+
+    @Value("${llm.http.system.read-timeout-seconds:120}")
+    private long systemReadTimeout;
+
+    @Value("${llm.http.system.write-timeout-seconds:30}")
+    private long systemWriteTimeout;
+
+    // 访客自定义API
+    @Value("${llm.http.guest.max-requests:32}")
+    private int guestMaxRequests;
+
+    @Value("${llm.http.guest.max-requests-per-host:4}")
+    private int guestMaxRequestsPerHost;
+
+    @Value("${llm.http.guest.max-idle-connections:8}")
+    private int guestMaxIdleConnections;
+
+    @Value("${llm.http.guest.keep-alive-seconds:60}")
+    private long guestKeepAliveSeconds;
+
+    @Value("${llm.http.guest.http2:true}")
+    private boolean guestHttp2;
+
+    @Value("${llm.http.guest.connect-timeout-seconds:10}")
+    private long guestConnectTimeout;
+
+    @Value("${llm.http.guest.read-timeout-seconds:120}")
+    private long guestReadTimeout;
+
+    @Value("${llm.http.guest.write-timeout-seconds:30}")
+    private long guestWriteTimeout;
+
+    @Autowired
+    private LLMRecordReplayInterceptor recordReplayInterceptor;
+
+    private OkHttpClient systemClient;
+    private OkHttpClient guestClient;
+
+    @PostConstruct
+    public void init() {
+        systemClient = buildClient(systemMaxRequests, systemMaxRequestsPerHost, systemMaxIdleConnections,
+                systemKeepAliveSeconds, systemHttp2, systemConnectTimeout, systemReadTimeout, systemWriteTimeout);
+        guestClient = buildClient(guestMaxRequests, guestMaxRequestsPerHost, guestMaxIdleConnections,
+                guestKeepAliveSeconds, guestHttp2, guestConnectTimeout, guestReadTimeout, guestWriteTimeout);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (OkHttpClient client : List.of(systemClient, guestClient)) {
+            client.dispatcher().executorService().shutdown();
+            client.connectionPool().evictAll();
+        }
+    }
+
+    private OkHttpClient buildClient(int maxRequests, int maxRequestsPerHost, int maxIdleConnections,
+                                     long keepAliveSeconds, boolean http2, long connectTimeout,
+                                     long readTimeout, long writeTimeout) {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequestsPerHost);
+
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(maxIdleConnections, keepAliveSeconds, TimeUnit.SECONDS))
+                .protocols(http2 ? List.of(Protocol.HTTP_2, Protocol.HTTP_1_1) : List.of(Protocol.HTTP_1_1))
+                .connectTimeout(connectTimeout, TimeUnit.SECONDS)
+                .readTimeout(readTimeout, TimeUnit.SECONDS)
+                .writeTimeout(writeTimeout, TimeUnit.SECONDS);
+        if (recordReplayInterceptor.isEnabled()) {
+            builder.addInterceptor(recordReplayInterceptor);
+        }
+        return builder.build();
+    }
+
+    /**
+     * 按调用方配置选择客户端：与系统配置一致的走系统客户端，其余（访客自定义API）走访客客户端
+     */
+    public OkHttpClient clientFor(String baseUrl, String apiKey) {
+        return isSystem(baseUrl, apiKey) ? systemClient : guestClient;
+    }
+
+    public boolean isSystem(String baseUrl, String apiKey) {
+        return systemBaseUrl.equals(baseUrl) && systemApiKey.equals(apiKey);
+    }
+
+    /**
+     * 各客户端的排队数、在途数和连接池状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("system", clientStats(systemClient));
+        stats.put("guest", clientStats(guestClient));
+        return stats;
+    }
+
+    private Map<String, Object> clientStats(OkHttpClient client) {
+        Dispatcher dispatcher = client.dispatcher();
+        ConnectionPool pool = client.connectionPool();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queuedCalls", dispatcher.queuedCallsCount());
+        stats.put("inFlightCalls", dispatcher.runningCallsCount());
+        stats.put("maxRequests", dispatcher.getMaxRequests());
+        stats.put("maxRequestsPerHost", dispatcher.getMaxRequestsPerHost());
+        stats.put("connections", pool.connectionCount());
+        stats.put("idleConnections", pool.idleConnectionCount());
+        return stats;
+    }
+}
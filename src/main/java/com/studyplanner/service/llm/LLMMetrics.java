@@ -0,0 +1,246 @@
+package com.studyplanner.service.llm;
+
+import okhttp3.Request;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LLM调用指标
+ *
+ * 按 模型 / 服务商（API主机名）/ 接口（plan、chat、summary，访客自定义API加 guest- 前缀）/ 结果 分组，
+ * 统计调用次数、总耗时与首字节耗时的直方图、输入输出token数和生成速度（输出token数 / 首字节之后的耗时）。
+ * 接口标签由 LLMService 构建请求时写入 OkHttp Request 的 tag。
+ */
+@Component
+public class LLMMetrics {
+
+    public static final String PLAN = "plan";
+    public static final String CHAT = "chat";
+    public static final String SUMMARY = "summary";
+
+    // 直方图桶的上界（毫秒），最后一个桶为 +Inf
+    private static final long[] BUCKETS_MS = {100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000};
+
+    private final ConcurrentHashMap<SeriesKey, Series> series = new ConcurrentHashMap<>();
+
+    private static class SeriesKey {
+        final String model;
+        final String provider;
+        final String endpoint;
+        final String outcome;
+
+        SeriesKey(String model, String provider, String endpoint, String outcome) {
+            this.model = model;
+            this.provider = provider;
+            this.endpoint = endpoint;
+            this.outcome = outcome;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey other = (SeriesKey) o;
+            return model.equals(other.model) && provider.equals(other.provider)
+                    && endpoint.equals(other.endpoint) && outcome.equals(other.outcome);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((model.hashCode() * 31 + provider.hashCode()) * 31 + endpoint.hashCode()) * 31 + outcome.hashCode();
+        }
+    }
+
+    /**
+     * 耗时直方图
+     */
+    private static class Histogram {
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_MS.length + 1);
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong sumMillis = new AtomicLong();
+
+        void add(long millis) {
+            int index = 0;
+            while (index < BUCKETS_MS.length && millis > BUCKETS_MS[index]) {
+                index++;
+            }
+            buckets.incrementAndGet(index);
+            count.incrementAndGet();
+            sumMillis.addAndGet(millis);
+        }
+
+        void addAll(Histogram other) {
+            for (int i = 0; i < buckets.length(); i++) {
+                buckets.addAndGet(i, other.buckets.get(i));
+            }
+            count.addAndGet(other.count.get());
+            sumMillis.addAndGet(other.sumMillis.get());
+        }
+
+        /**
+         * 按桶内线性插值估算分位数
+         */
+        long percentile(double p) {
+            long total = count.get();
+            if (total == 0) {
+                return 0;
+            }
+            double rank = p * total;
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                long inBucket = buckets.get(i);
+                if (inBucket > 0 && seen + inBucket >= rank) {
+                    long lower = i == 0 ? 0 : BUCKETS_MS[i - 1];
+                    if (i == BUCKETS_MS.length) {
+                        return lower;
+                    }
+                    return lower + (long) ((BUCKETS_MS[i] - lower) * ((rank - seen) / inBucket));
+                }
+                seen += inBucket;
+            }
+            return BUCKETS_MS[BUCKETS_MS.length - 1];
+        }
+
+        Map<String, Object> toMap() {
+            long total = count.get();
+            Map<String, Object> bucketCounts = new LinkedHashMap<>();
+            for (int i = 0; i < buckets.length(); i++) {
+                bucketCounts.put(i < BUCKETS_MS.length ? "le" + BUCKETS_MS[i] : "inf", buckets.get(i));
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("count", total);
+            map.put("avgMillis", total > 0 ? sumMillis.get() / total : 0);
+            map.put("p50Millis", percentile(0.5));
+            map.put("p95Millis", percentile(0.95));
+            map.put("p99Millis", percentile(0.99));
+            map.put("buckets", bucketCounts);
+            return map;
+        }
+    }
+
+    private static class Series {
+        final Histogram latency = new Histogram();
+        final Histogram firstByte = new Histogram();
+        final AtomicLong promptTokens = new AtomicLong();
+        final AtomicLong completionTokens = new AtomicLong();
+        // 有输出token的调用在首字节之后的耗时，用于计算生成速度
+        final AtomicLong generationMillis = new AtomicLong();
+
+        void addAll(Series other) {
+            latency.addAll(other.latency);
+            firstByte.addAll(other.firstByte);
+            promptTokens.addAndGet(other.promptTokens.get());
+            completionTokens.addAndGet(other.completionTokens.get());
+            generationMillis.addAndGet(other.generationMillis.get());
+        }
+
+        double tokensPerSecond() {
+            long millis = generationMillis.get();
+            return millis > 0 ? completionTokens.get() * 1000.0 / millis : 0;
+        }
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param statusCode 响应状态码，未收到响应时为0
+     * @param completion 解析出的结果（流式调用为汇总后的结果），失败时为null
+     * @param firstByteMs 收到响应头的耗时，未收到时为负数
+     */
+    public void record(Request request, String model, int statusCode, LLMCompletion completion,
+                       long firstByteMs, long totalMs, boolean cancelled) {
+        String endpoint = request.tag(String.class);
+        SeriesKey key = new SeriesKey(model, request.url().host(), endpoint != null ? endpoint : CHAT,
+                outcome(statusCode, completion, cancelled));
+        Series target = series.computeIfAbsent(key, k -> new Series());
+        target.latency.add(totalMs);
+        if (firstByteMs >= 0) {
+            target.firstByte.add(firstByteMs);
+        }
+        if (completion != null) {
+            target.promptTokens.addAndGet(completion.getPromptTokens());
+            target.completionTokens.addAndGet(completion.getCompletionTokens());
+            if (completion.getCompletionTokens() > 0 && firstByteMs >= 0) {
+                target.generationMillis.addAndGet(Math.max(1, totalMs - firstByteMs));
+            }
+        }
+    }
+
+    private String outcome(int statusCode, LLMCompletion completion, boolean cancelled) {
+        if (cancelled) {
+            return "cancelled";
+        }
+        if (statusCode == 0) {
+            return "network_error";
+        }
+        if (statusCode == 429) {
+            return "rate_limited";
+        }
+        if (statusCode >= 500) {
+            return "server_error";
+        }
+        if (statusCode >= 400) {
+            return "client_error";
+        }
+        if (completion == null) {
+            return "parse_error";
+        }
+        return completion.isTruncated() ? "truncated" : "success";
+    }
+
+    public Map<String, Object> getStats() {
+        List<Map<String, Object>> items = new ArrayList<>();
+        Map<String, Series> byModel = new HashMap<>();
+        Map<String, long[]> modelCalls = new HashMap<>();
+        series.forEach((key, value) -> {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("model", key.model);
+            item.put("provider", key.provider);
+            item.put("endpoint", key.endpoint);
+            item.put("outcome", key.outcome);
+            item.put("latency", value.latency.toMap());
+            item.put("firstByte", value.firstByte.toMap());
+            item.put("promptTokens", value.promptTokens.get());
+            item.put("completionTokens", value.completionTokens.get());
+            item.put("tokensPerSecond", value.tokensPerSecond());
+            items.add(item);
+
+            byModel.computeIfAbsent(key.model, m -> new Series()).addAll(value);
+            long[] calls = modelCalls.computeIfAbsent(key.model, m -> new long[2]);
+            calls[0] += value.latency.count.get();
+            if (!"success".equals(key.outcome) && !"truncated".equals(key.outcome) && !"cancelled".equals(key.outcome)) {
+                calls[1] += value.latency.count.get();
+            }
+        });
+
+        Map<String, Object> models = new HashMap<>();
+        byModel.forEach((model, value) -> {
+            long[] calls = modelCalls.get(model);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("calls", calls[0]);
+            item.put("errorRate", calls[0] > 0 ? (double) calls[1] / calls[0] : 0.0);
+            item.put("p50LatencyMillis", value.latency.percentile(0.5));
+            item.put("p95LatencyMillis", value.latency.percentile(0.95));
+            item.put("p50FirstByteMillis", value.firstByte.percentile(0.5));
+            item.put("p95FirstByteMillis", value.firstByte.percentile(0.95));
+            item.put("promptTokens", value.promptTokens.get());
+            item.put("completionTokens", value.completionTokens.get());
+            item.put("tokensPerSecond", value.tokensPerSecond());
+            models.put(model, item);
+        });
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("models", models);
+        result.put("series", items);
+        return result;
+    }
+}
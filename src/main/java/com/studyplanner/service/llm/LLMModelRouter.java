@@ -0,0 +1,303 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 计划生成的模型路由
+ *
+ * 按模型保存最近的计划生成调用（请求规模、耗时、首次响应是否完整、是否失败），
+ * 用线性拟合预测给定规模（天数 × 语言权重）的耗时。路由时排除熔断中和近期错误率过高的模型，
+ * 优先选择预测耗时不超过 latency-target-ms 的模型：小计划选最快的，大计划选长JSON完整率最高的（相近时选更快的）；
+ * 都达不到目标时选预测最快的。样本不足或错误率过高的模型以 exploration-rate 的概率被选中以积累数据，
+ * 观测超过 max-age-minutes 后不再计入，被排除的模型恢复后可以重新参与路由。
+ */
+@Component
+public class LLMModelRouter {
+
+    @Value("${llm.routing.enabled:false}")
+    private boolean enabled;
+
+    // 客户端指定了模型时是否仍然路由
+    @Value("${llm.routing.override-client-model:false}")
+    private boolean overrideClientModel;
+
+    @Value("${llm.routing.latency-target-ms:60000}")
+    private long latencyTargetMs;
+
+    @Value("${llm.routing.large-plan-days:30}")
+    private int largePlanDays;
+
+    // 英文计划每天的输出量相对中文的倍数
+    @Value("${llm.routing.english-weight:1.3}")
+    private double englishWeight;
+
+    @Value("${llm.routing.window-size:50}")
+    private int windowSize;
+
+    @Value("${llm.routing.min-samples:5}")
+    private int minSamples;
+
+    @Value("${llm.routing.max-error-rate:0.2}")
+    private double maxErrorRate;
+
+    // 统计长JSON完整率时只看不少于该天数的调用（样本不足时使用全部调用）
+    @Value("${llm.routing.long-json-min-days:14}")
+    private int longJsonMinDays;
+
+    @Value("${llm.routing.exploration-rate:0.05}")
+    private double explorationRate;
+
+    @Value("${llm.routing.max-age-minutes:60}")
+    private long maxAgeMinutes;
+
+    // 完整率相差不超过该值时视为相同，改按耗时选择
+    private static final double RELIABILITY_TOLERANCE = 0.02;
+
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicLong> decisions = new ConcurrentHashMap<>();
+    private final AtomicLong explorations = new AtomicLong();
+    private final AtomicLong targetMisses = new AtomicLong();
+    private final AtomicLong noDataFallbacks = new AtomicLong();
+
+    private static class Observation {
+        final double units;
+        final int days;
+        final long latencyMs;
+        final boolean complete;
+        final boolean failed;
+        final long observedAt;
+
+        Observation(double units, int days, long latencyMs, boolean complete, boolean failed, long observedAt) {
+            this.units = units;
+            this.days = days;
+            this.latencyMs = latencyMs;
+            this.complete = complete;
+            this.failed = failed;
+            this.observedAt = observedAt;
+        }
+    }
+
+    /**
+     * 单个模型基于最近观测的估计
+     */
+    private static class Estimate {
+        int samples;
+        double errorRate;
+        double completeRate;
+        double intercept;
+        double slope;
+
+        long predict(double units) {
+            return (long) (intercept + slope * units);
+        }
+    }
+
+    /**
+     * 最近 windowSize 次调用的环形窗口
+     */
+    private class Window {
+        final Observation[] observations = new Observation[windowSize];
+        int count;
+        int next;
+
+        synchronized void add(Observation observation) {
+            observations[next] = observation;
+            next = (next + 1) % observations.length;
+            if (count < observations.length) {
+                count++;
+            }
+        }
+
+        synchronized Estimate estimate() {
+            long oldest = System.currentTimeMillis() - maxAgeMinutes * 60000;
+            Estimate estimate = new Estimate();
+            int samples = 0;
+            int failures = 0;
+            int longCalls = 0;
+            int longComplete = 0;
+            int allComplete = 0;
+            int succeeded = 0;
+            double sumX = 0;
+            double sumY = 0;
+            double sumXY = 0;
+            double sumXX = 0;
+            for (int i = 0; i < count; i++) {
+                Observation observation = observations[i];
+                if (observation.observedAt < oldest) {
+                    continue;
+                }
+                samples++;
+                if (observation.failed) {
+                    failures++;
+                    continue;
+                }
+                succeeded++;
+                if (observation.complete) {
+                    allComplete++;
+                }
+                if (observation.days >= longJsonMinDays) {
+                    longCalls++;
+                    if (observation.complete) {
+                        longComplete++;
+                    }
+                }
+                sumX += observation.units;
+                sumY += observation.latencyMs;
+                sumXY += observation.units * observation.latencyMs;
+                sumXX += observation.units * observation.units;
+            }
+            estimate.samples = samples;
+            estimate.errorRate = samples > 0 ? (double) failures / samples : 0;
+            estimate.completeRate = longCalls >= minSamples ? (double) longComplete / longCalls
+                    : succeeded > 0 ? (double) allComplete / succeeded : 0;
+
+            // 耗时 ≈ intercept + slope × 规模；规模没有变化时按平均每单位耗时估计
+            if (succeeded > 0) {
+                double meanX = sumX / succeeded;
+                double meanY = sumY / succeeded;
+                double variance = sumXX / succeeded - meanX * meanX;
+                if (succeeded >= 2 && variance > 1e-9) {
+                    estimate.slope = Math.max(0, (sumXY / succeeded - meanX * meanY) / variance);
+                    estimate.intercept = Math.max(0, meanY - estimate.slope * meanX);
+                } else {
+                    estimate.slope = meanX > 0 ? meanY / meanX : 0;
+                    estimate.intercept = 0;
+                }
+            }
+            return estimate;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 是否对本次请求做路由：未开启路由时不做；客户端指定了模型时按 override-client-model 决定
+     */
+    public boolean shouldRoute(String requestedModel) {
+        return enabled && (overrideClientModel || requestedModel == null || requestedModel.isEmpty());
+    }
+
+    /**
+     * 请求规模：天数 × 语言权重
+     */
+    public double units(int days, boolean english) {
+        return days * (english ? englishWeight : 1.0);
+    }
+
+    /**
+     * 记录一次计划生成调用
+     *
+     * @param complete 首次响应是否包含了请求的全部天数且未被截断
+     * @param failed   调用是否失败
+     */
+    public void observe(String model, int days, boolean english, long latencyMs, boolean complete, boolean failed) {
+        windows.computeIfAbsent(model, m -> new Window())
+                .add(new Observation(units(days, english), days, latencyMs, complete, failed,
+                        System.currentTimeMillis()));
+    }
+
+    /**
+     * 在候选模型中选择本次计划生成使用的模型
+     *
+     * @param candidates 可用的候选模型（已排除熔断中的模型）
+     * @param fallback   没有足够数据时使用的模型
+     * @param totalDays  计划总天数，决定是否按大计划处理
+     * @param callUnits  单次调用的规模（分段生成时为每段的规模）
+     * @param rounds     依次进行的调用轮数（分段生成时为大纲请求加上分段的并行轮数）
+     */
+    public String route(List<String> candidates, String fallback, int totalDays, double callUnits, int rounds) {
+        // 样本不足和错误率过高的模型都可被探索，后者恢复后能重新积累成功的观测
+        List<String> unexplored = new ArrayList<>();
+        Map<String, Estimate> known = new HashMap<>();
+        for (String candidate : candidates) {
+            Window window = windows.get(candidate);
+            Estimate estimate = window != null ? window.estimate() : null;
+            if (estimate == null || estimate.samples < minSamples || estimate.errorRate > maxErrorRate) {
+                unexplored.add(candidate);
+            } else {
+                known.put(candidate, estimate);
+            }
+        }
+
+        if (!unexplored.isEmpty() && ThreadLocalRandom.current().nextDouble() < explorationRate) {
+            explorations.incrementAndGet();
+            return decide(unexplored.get(ThreadLocalRandom.current().nextInt(unexplored.size())));
+        }
+        if (known.isEmpty()) {
+            noDataFallbacks.incrementAndGet();
+            return decide(candidates.contains(fallback) || candidates.isEmpty() ? fallback : candidates.get(0));
+        }
+
+        Map<String, Estimate> pool = new HashMap<>();
+        known.forEach((model, estimate) -> {
+            if (estimate.predict(callUnits) * rounds <= latencyTargetMs) {
+                pool.put(model, estimate);
+            }
+        });
+        if (pool.isEmpty()) {
+            targetMisses.incrementAndGet();
+            pool.putAll(known);
+        }
+
+        boolean large = totalDays >= largePlanDays;
+        String best = null;
+        Estimate bestEstimate = null;
+        for (Map.Entry<String, Estimate> entry : pool.entrySet()) {
+            Estimate estimate = entry.getValue();
+            if (bestEstimate == null || better(estimate, bestEstimate, callUnits, large)) {
+                best = entry.getKey();
+                bestEstimate = estimate;
+            }
+        }
+        return decide(best);
+    }
+
+    private boolean better(Estimate candidate, Estimate current, double units, boolean large) {
+        if (large && Math.abs(candidate.completeRate - current.completeRate) > RELIABILITY_TOLERANCE) {
+            return candidate.completeRate > current.completeRate;
+        }
+        return candidate.predict(units) < current.predict(units);
+    }
+
+    private String decide(String model) {
+        decisions.computeIfAbsent(model, m -> new AtomicLong()).incrementAndGet();
+        return model;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> models = new HashMap<>();
+        windows.forEach((model, window) -> {
+            Estimate estimate = window.estimate();
+            Map<String, Object> item = new HashMap<>();
+            item.put("samples", estimate.samples);
+            item.put("errorRate", estimate.errorRate);
+            item.put("completeRate", estimate.completeRate);
+            item.put("predicted7DaysMillis", estimate.predict(units(7, false)));
+            item.put("predicted30DaysMillis", estimate.predict(units(30, false)));
+            models.put(model, item);
+        });
+        Map<String, Object> decisionCounts = new HashMap<>();
+        decisions.forEach((model, count) -> decisionCounts.put(model, count.get()));
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("latencyTargetMs", latencyTargetMs);
+        stats.put("models", models);
+        stats.put("decisions", decisionCounts);
+        stats.put("explorations", explorations.get());
+        stats.put("targetMisses", targetMisses.get());
+        stats.put("noDataFallbacks", noDataFallbacks.get());
+        return stats;
+    }
+}
@@ -0,0 +1,106 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 推理内容统计
+ *
+ * 按模型统计被过滤掉的推理token数；流式调用另外记录首个回答token的耗时（不含推理过程），
+ * 与整个流的耗时分开统计，便于区分“模型在思考”和“模型回答慢”。
+ */
+@Component
+public class LLMReasoningStats {
+
+    @Value("${llm.reasoning.strip-enabled:true}")
+    private boolean stripEnabled;
+
+    @Value("${llm.reasoning.first-answer-metric:true}")
+    private boolean firstAnswerMetric;
+
+    private final ConcurrentHashMap<String, ModelStats> models = new ConcurrentHashMap<>();
+
+    private static class ModelStats {
+        final AtomicLong responses = new AtomicLong();
+        final AtomicLong reasoningResponses = new AtomicLong();
+        final AtomicLong reasoningTokens = new AtomicLong();
+        final AtomicLong firstAnswerCount = new AtomicLong();
+        final AtomicLong firstAnswerMillis = new AtomicLong();
+        final AtomicLong streamCount = new AtomicLong();
+        final AtomicLong streamMillis = new AtomicLong();
+    }
+
+    public boolean isStripEnabled() {
+        return stripEnabled;
+    }
+
+    /**
+     * 为一次回复创建过滤器；关闭过滤时返回null
+     */
+    public ReasoningFilter newFilter() {
+        return stripEnabled ? new ReasoningFilter() : null;
+    }
+
+    /**
+     * 记录一次回复中被过滤的推理token数
+     *
+     * @param reportedTokens 服务端 usage 中返回的推理token数，未返回时传0，使用估算值
+     */
+    public void recordResponse(String model, ReasoningFilter filter, int reportedTokens) {
+        ModelStats stats = models.computeIfAbsent(model, m -> new ModelStats());
+        stats.responses.incrementAndGet();
+        int tokens = reportedTokens > 0 ? reportedTokens : (filter != null ? filter.getReasoningTokens() : 0);
+        if (tokens > 0) {
+            stats.reasoningResponses.incrementAndGet();
+            stats.reasoningTokens.addAndGet(tokens);
+        }
+    }
+
+    /**
+     * 记录流式调用收到首个回答token的耗时
+     */
+    public void recordFirstAnswer(String model, long latencyMs) {
+        if (!firstAnswerMetric) {
+            return;
+        }
+        ModelStats stats = models.computeIfAbsent(model, m -> new ModelStats());
+        stats.firstAnswerCount.incrementAndGet();
+        stats.firstAnswerMillis.addAndGet(latencyMs);
+    }
+
+    /**
+     * 记录流式调用的总耗时
+     */
+    public void recordStream(String model, long latencyMs) {
+        ModelStats stats = models.computeIfAbsent(model, m -> new ModelStats());
+        stats.streamCount.incrementAndGet();
+        stats.streamMillis.addAndGet(latencyMs);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> byModel = new HashMap<>();
+        models.forEach((model, stats) -> {
+            long firstAnswers = stats.firstAnswerCount.get();
+            long streams = stats.streamCount.get();
+            Map<String, Object> item = new HashMap<>();
+            item.put("responses", stats.responses.get());
+            item.put("reasoningResponses", stats.reasoningResponses.get());
+            item.put("reasoningTokens", stats.reasoningTokens.get());
+            if (firstAnswerMetric) {
+                item.put("avgFirstAnswerMillis", firstAnswers > 0 ? stats.firstAnswerMillis.get() / firstAnswers : 0);
+            }
+            item.put("avgStreamMillis", streams > 0 ? stats.streamMillis.get() / streams : 0);
+            byModel.put(model, item);
+        });
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("stripEnabled", stripEnabled);
+        result.put("models", byModel);
+        return result;
+    }
+}
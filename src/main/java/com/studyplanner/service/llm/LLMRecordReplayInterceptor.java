@@ -0,0 +1,176 @@
+package com.studyplanner.service.llm;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LLM流量录制与回放（OkHttp拦截器）
+ *
+ * record：真实请求照常发出，响应（状态码、Content-Type、完整响应体与耗时）按请求URL和请求体的SHA-256写入目录；
+ * replay：不访问网络，直接从目录读取录制的响应，可选按录制时的耗时等待；没有录制时返回404（不计入熔断）。
+ * 录制时流式响应会被完整读取后再交给调用方，回放时一次性返回。
+ * 鉴权头不参与匹配，录制文件中也不保存。
+ */
+@Component
+public class LLMRecordReplayInterceptor implements Interceptor {
+
+    @Value("${llm.record-replay.mode:off}")
+    private String mode;
+
+    @Value("${llm.record-replay.dir:llm-recordings}")
+    private String dir;
+
+    @Value("${llm.record-replay.replay-latency:true}")
+    private boolean replayLatency;
+
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong replayMisses = new AtomicLong();
+
+    public boolean isEnabled() {
+        return isRecording() || isReplaying();
+    }
+
+    private boolean isRecording() {
+        return "record".equalsIgnoreCase(mode);
+    }
+
+    private boolean isReplaying() {
+        return "replay".equalsIgnoreCase(mode);
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!isEnabled()) {
+            return chain.proceed(request);
+        }
+
+        Path file = Paths.get(dir, recordingKey(request) + ".json");
+        if (isReplaying()) {
+            return replay(request, file);
+        }
+
+        long start = System.currentTimeMillis();
+        Response response = chain.proceed(request);
+        ResponseBody body = response.body();
+        byte[] bytes = body != null ? body.bytes() : new byte[0];
+        MediaType contentType = body != null ? body.contentType() : null;
+        save(request, file, response.code(), contentType, bytes, System.currentTimeMillis() - start);
+        return response.newBuilder()
+                .body(ResponseBody.create(bytes, contentType))
+                .build();
+    }
+
+    private Response replay(Request request, Path file) throws IOException {
+        if (!Files.exists(file)) {
+            replayMisses.incrementAndGet();
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(404)
+                    .message("No Recording")
+                    .body(ResponseBody.create("{\"error\":{\"message\":\"没有对应的录制响应\"}}",
+                            MediaType.parse("application/json")))
+                    .build();
+        }
+
+        JSONObject recording = JSON.parseObject(Files.readString(file, StandardCharsets.UTF_8));
+        if (replayLatency) {
+            try {
+                Thread.sleep(recording.getLongValue("latencyMs"));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("回放被中断");
+            }
+        }
+        replayed.incrementAndGet();
+        String contentType = recording.getString("contentType");
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(recording.getIntValue("code"))
+                .message("Replayed")
+                .body(ResponseBody.create(recording.getString("body"),
+                        contentType != null ? MediaType.parse(contentType) : null))
+                .build();
+    }
+
+    private void save(Request request, Path file, int code, MediaType contentType, byte[] body, long latencyMs) {
+        JSONObject recording = new JSONObject();
+        recording.put("url", request.url().toString());
+        recording.put("request", requestBody(request));
+        recording.put("code", code);
+        recording.put("contentType", contentType != null ? contentType.toString() : null);
+        recording.put("latencyMs", latencyMs);
+        recording.put("body", new String(body, StandardCharsets.UTF_8));
+        try {
+            Files.createDirectories(file.getParent());
+            // 先写临时文件再替换，并发录制同一请求时不会读到写了一半的文件
+            Path temp = Files.createTempFile(file.getParent(), "recording", ".tmp");
+            Files.writeString(temp, recording.toJSONString(), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            recorded.incrementAndGet();
+        } catch (IOException e) {
+            System.err.println("保存LLM录制响应失败: " + e.getMessage());
+        }
+    }
+
+    private String recordingKey(Request request) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(request.url().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(requestBody(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private String requestBody(Request request) {
+        if (request.body() == null) {
+            return "";
+        }
+        try {
+            Buffer buffer = new Buffer();
+            request.body().writeTo(buffer);
+            return buffer.readUtf8();
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("mode", mode);
+        stats.put("dir", dir);
+        stats.put("recorded", recorded.get());
+        stats.put("replayed", replayed.get());
+        stats.put("replayMisses", replayMisses.get());
+        return stats;
+    }
+}
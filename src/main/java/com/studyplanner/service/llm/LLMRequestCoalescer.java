@@ -0,0 +1,173 @@
+package com.studyplanner.service.llm;
+
+import com.studyplanner.service.OutboundIoExecutor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * LLM请求合并器（single-flight）
+ *
+ * 完全相同的请求（同一接口地址、同一API Key、同一请求体）同时到达时，
+ * 只有第一个请求真正发起HTTP调用，其余请求等待并共享它的结果。
+ * 每个键的等待者数量有上限，超出的请求独立发起调用，避免单个慢请求拖住过多线程。
+ * 等待者最多等待 max-wait-ms，被中断（自身请求超时或取消）时立即放弃等待。
+ * 发起者因自身被取消而失败时不把失败传给等待者，由其中一个等待者重新发起调用。
+ */
+@Component
+public class LLMRequestCoalescer {
+
+    @Value("${llm.coalescing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.coalescing.max-waiters:50}")
+    private int maxWaiters;
+
+    @Value("${llm.coalescing.max-wait-ms:300000}")
+    private long maxWaitMs;
+
+    // 发起者被取消时交给等待者的结果，等待者收到后重新竞争发起
+    private static final Object LEADER_CANCELLED = new Object();
+
+    private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong leaderCalls = new AtomicLong();
+    private final AtomicLong coalescedCalls = new AtomicLong();
+    private final AtomicLong overflowCalls = new AtomicLong();
+    private final AtomicLong failedLeaders = new AtomicLong();
+    private final AtomicLong cancelledLeaders = new AtomicLong();
+    private final AtomicLong waitTimeouts = new AtomicLong();
+
+    private static class InFlight {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+        final AtomicInteger waiters = new AtomicInteger();
+    }
+
+    /**
+     * 根据请求的全部要素计算合并键
+     */
+    public static String key(String baseUrl, String apiKey, String requestBody) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(baseUrl.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(apiKey.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+            digest.update(requestBody.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 执行请求；若已有相同请求在途则等待其结果
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+        while (true) {
+            InFlight created = new InFlight();
+            InFlight existing = inFlight.putIfAbsent(key, created);
+
+            if (existing == null) {
+                return lead(key, created, call);
+            }
+
+            if (existing.waiters.incrementAndGet() > maxWaiters) {
+                existing.waiters.decrementAndGet();
+                overflowCalls.incrementAndGet();
+                return call.get();
+            }
+
+            Object result;
+            try {
+                result = existing.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("等待LLM响应时被中断", e);
+            } catch (TimeoutException e) {
+                waitTimeouts.incrementAndGet();
+                throw new RuntimeException("等待LLM响应超时", e);
+            } catch (ExecutionException e) {
+                coalescedCalls.incrementAndGet();
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new CompletionException(cause);
+            } finally {
+                existing.waiters.decrementAndGet();
+            }
+
+            if (result != LEADER_CANCELLED) {
+                coalescedCalls.incrementAndGet();
+                return (T) result;
+            }
+        }
+    }
+
+    /**
+     * 发起调用并把结果交给等待者；先移除在途记录再完成，重新竞争的等待者不会拿到旧记录
+     */
+    private <T> T lead(String key, InFlight flight, Supplier<T> call) {
+        leaderCalls.incrementAndGet();
+        T result;
+        try {
+            result = call.get();
+        } catch (Throwable e) {
+            inFlight.remove(key, flight);
+            if (OutboundIoExecutor.isCurrentCancelled() || Thread.currentThread().isInterrupted()) {
+                cancelledLeaders.incrementAndGet();
+                flight.future.complete(LEADER_CANCELLED);
+            } else {
+                failedLeaders.incrementAndGet();
+                flight.future.completeExceptionally(e);
+            }
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        flight.future.complete(result);
+        return result;
+    }
+
+    /**
+     * 合并统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("maxWaiters", maxWaiters);
+        stats.put("maxWaitMs", maxWaitMs);
+        stats.put("inFlightKeys", inFlight.size());
+        stats.put("upstreamCalls", leaderCalls.get());
+        stats.put("savedCalls", coalescedCalls.get());
+        stats.put("overflowCalls", overflowCalls.get());
+        stats.put("failedLeaders", failedLeaders.get());
+        stats.put("cancelledLeaders", cancelledLeaders.get());
+        stats.put("waitTimeouts", waitTimeouts.get());
+        return stats;
+    }
+}
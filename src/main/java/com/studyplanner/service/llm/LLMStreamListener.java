@@ -0,0 +1,23 @@
+package com.studyplanner.service.llm;
+
+/**
+ * LLM流式响应回调
+ * 回调在OkHttp的调度线程中执行，实现方不应长时间阻塞
+ */
+public interface LLMStreamListener {
+
+    /**
+     * 收到一段增量内容（choices[0].delta.content）
+     */
+    void onDelta(String content);
+
+    /**
+     * 流正常结束（收到 [DONE] 或连接正常关闭）
+     */
+    void onComplete();
+
+    /**
+     * 调用失败或流被中断
+     */
+    void onError(Throwable error);
+}
@@ -0,0 +1,13 @@
+package com.studyplanner.service.llm;
+
+/**
+ * LLM服务暂不可用（请求的模型及所有备选模型的熔断器均处于打开状态）
+ */
+public class LLMUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public LLMUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,76 @@
+package com.studyplanner.service.llm;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+
+import java.util.List;
+
+/**
+ * 学习计划JSON格式转换
+ *
+ * 紧凑格式中每一天是一个数组：[天数, 学习内容, 时长, [推荐资源...]]，
+ * 这里统一展开为 {"day", "content", "duration", "resources"} 对象，供落库和前端使用。
+ */
+public final class PlanJsonSupport {
+
+    private PlanJsonSupport() {
+    }
+
+    /**
+     * 将 dailyPlans 中的单个元素（对象或紧凑数组）转换为标准的单日计划对象
+     */
+    public static JSONObject toDayObject(String element) {
+        Object parsed = JSON.parse(element);
+        if (parsed instanceof JSONObject) {
+            return (JSONObject) parsed;
+        }
+        if (!(parsed instanceof JSONArray)) {
+            throw new IllegalArgumentException("无法识别的每日计划格式: " + element);
+        }
+
+        JSONArray compact = (JSONArray) parsed;
+        JSONObject day = new JSONObject();
+        day.put("day", compact.size() > 0 ? compact.getIntValue(0) : 0);
+        day.put("content", compact.size() > 1 ? compact.getString(1) : "");
+        day.put("duration", compact.size() > 2 ? compact.getDoubleValue(2) : 0.0);
+        Object resources = compact.size() > 3 ? compact.get(3) : null;
+        day.put("resources", resources instanceof JSONArray ? resources : new JSONArray());
+        return day;
+    }
+
+    /**
+     * 将完整的计划文本展开为标准格式；文本不完整（如被截断）时原样返回
+     */
+    public static String expandPlan(String text) {
+        if (text == null) {
+            return null;
+        }
+        PlanStreamParser parser = new PlanStreamParser();
+        List<String> elements = parser.feed(text);
+        if (!parser.isDailyPlansClosed()) {
+            return text;
+        }
+
+        return toPlanObject(parser, elements).toJSONString();
+    }
+
+    /**
+     * 由解析器已解析出的内容组装标准格式的计划对象（格式错误的单个元素会被跳过）
+     */
+    public static JSONObject toPlanObject(PlanStreamParser parser, List<String> elements) {
+        JSONArray dailyPlans = new JSONArray();
+        for (String element : elements) {
+            try {
+                dailyPlans.add(toDayObject(element));
+            } catch (RuntimeException e) {
+                // 跳过无法解析的元素
+            }
+        }
+        JSONObject plan = new JSONObject();
+        plan.put("title", parser.getTitle());
+        plan.put("summary", parser.getSummary());
+        plan.put("dailyPlans", dailyPlans);
+        return plan;
+    }
+}
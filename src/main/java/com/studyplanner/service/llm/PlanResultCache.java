@@ -0,0 +1,139 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 学习计划生成结果缓存
+ *
+ * 以规范化后的生成参数为键缓存LLM原始响应，按LRU顺序淘汰，
+ * 同时受条目数、总字符数和存活时间（TTL）三重限制，保证内存占用有界。
+ */
+@Component
+public class PlanResultCache {
+
+    @Value("${llm.plan-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.plan-cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${llm.plan-cache.max-total-chars:20000000}")
+    private long maxTotalChars;
+
+    @Value("${llm.plan-cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    // accessOrder=true：每次命中都会把条目移到队尾，队首即最久未使用
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalChars = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    private static class Entry {
+        final String value;
+        final long expireAt;
+
+        Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 查询缓存，未命中或已过期时返回null
+     */
+    public synchronized String get(String key) {
+        if (!enabled) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            remove(key, entry);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * 写入缓存，超出容量时淘汰最久未使用的条目
+     */
+    public synchronized void put(String key, String value) {
+        if (!enabled || value == null || value.length() > maxTotalChars) {
+            return;
+        }
+        Entry old = entries.remove(key);
+        if (old != null) {
+            totalChars -= old.value.length();
+        }
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMinutes * 60_000L));
+        totalChars += value.length();
+        puts.incrementAndGet();
+
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || totalChars > maxTotalChars) && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            totalChars -= eldest.getValue().value.length();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        entries.clear();
+        totalChars = 0;
+    }
+
+    private void remove(String key, Entry entry) {
+        entries.remove(key);
+        totalChars -= entry.value.length();
+    }
+
+    /**
+     * 缓存统计信息
+     */
+    public synchronized Map<String, Object> getStats() {
+        long hitCount = hits.get();
+        long missCount = misses.get();
+        long total = hitCount + missCount;
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("totalChars", totalChars);
+        stats.put("maxTotalChars", maxTotalChars);
+        stats.put("ttlMinutes", ttlMinutes);
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("puts", puts.get());
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        return stats;
+    }
+}
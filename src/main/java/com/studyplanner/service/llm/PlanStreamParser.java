@@ -0,0 +1,172 @@
+package com.studyplanner.service.llm;
+
+import com.alibaba.fastjson2.JSON;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 学习计划JSON增量解析器
+ *
+ * 逐段接收LLM输出的文本，跟踪括号深度与字符串状态，
+ * 每当 dailyPlans 数组中的一个元素完整闭合时立即返回该元素的原始JSON文本。
+ * 顶层的字符串字段（title、summary）在解析到时同步记录。
+ * 第一个 { 之前的内容（LLM附带的说明文字、代码块标记等）会被忽略。
+ */
+public class PlanStreamParser {
+
+    private static final String DAILY_PLANS_KEY = "dailyPlans";
+
+    private final StringBuilder buffer = new StringBuilder();
+    private final Map<String, String> topLevelFields = new HashMap<>();
+
+    private int scanPos = 0;
+    private int depth = 0;
+    private boolean inString = false;
+    private boolean escaped = false;
+    private int stringStart = -1;
+
+    // 顶层对象中最近一次读到的键，以及是否正在等待该键的值
+    private String pendingKey;
+    private String currentKey;
+    private boolean expectingValue = false;
+
+    // dailyPlans 数组内部的深度（未进入数组时为-1）
+    private int arrayDepth = -1;
+    private int elementStart = -1;
+    private boolean arrayClosed = false;
+    private boolean objectClosed = false;
+
+    /**
+     * 追加一段文本，返回本次新解析出的完整 dailyPlans 元素
+     */
+    public List<String> feed(String chunk) {
+        List<String> elements = new ArrayList<>();
+        if (chunk == null || chunk.isEmpty() || objectClosed) {
+            return elements;
+        }
+        buffer.append(chunk);
+
+        for (; scanPos < buffer.length(); scanPos++) {
+            char c = buffer.charAt(scanPos);
+
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                    onStringClosed(scanPos);
+                }
+                continue;
+            }
+
+            if (depth == 0 && c != '{') {
+                // 顶层对象之外的内容直接跳过
+                continue;
+            }
+
+            switch (c) {
+                case '"':
+                    if (arrayDepth > 0 && depth == arrayDepth && elementStart < 0) {
+                        elementStart = scanPos;
+                    }
+                    inString = true;
+                    stringStart = scanPos;
+                    break;
+                case ':':
+                    if (depth == 1) {
+                        currentKey = pendingKey;
+                        expectingValue = true;
+                    }
+                    break;
+                case ',':
+                    if (depth == 1) {
+                        expectingValue = false;
+                    }
+                    break;
+                case '{':
+                case '[':
+                    if (arrayDepth > 0 && depth == arrayDepth && elementStart < 0) {
+                        elementStart = scanPos;
+                    }
+                    depth++;
+                    if (c == '[' && depth == 2 && arrayDepth < 0 && !arrayClosed
+                            && expectingValue && DAILY_PLANS_KEY.equals(currentKey)) {
+                        arrayDepth = depth;
+                    }
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    if (arrayDepth > 0 && depth == arrayDepth && elementStart >= 0) {
+                        elements.add(buffer.substring(elementStart, scanPos + 1));
+                        elementStart = -1;
+                    } else if (arrayDepth > 0 && depth < arrayDepth) {
+                        arrayDepth = -1;
+                        arrayClosed = true;
+                    }
+                    if (depth == 0) {
+                        objectClosed = true;
+                        scanPos++;
+                        return elements;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return elements;
+    }
+
+    private void onStringClosed(int end) {
+        if (depth != 1) {
+            return;
+        }
+        String raw = buffer.substring(stringStart, end + 1);
+        if (expectingValue) {
+            topLevelFields.put(currentKey, JSON.parseObject(raw, String.class));
+            expectingValue = false;
+        } else {
+            pendingKey = JSON.parseObject(raw, String.class);
+        }
+    }
+
+    /**
+     * 已解析到的计划标题（尚未解析到时返回null）
+     */
+    public String getTitle() {
+        return topLevelFields.get("title");
+    }
+
+    /**
+     * 已解析到的计划概述（尚未解析到时返回null）
+     */
+    public String getSummary() {
+        return topLevelFields.get("summary");
+    }
+
+    /**
+     * dailyPlans 数组是否已经闭合
+     */
+    public boolean isDailyPlansClosed() {
+        return arrayClosed;
+    }
+
+    /**
+     * 顶层JSON对象是否已经闭合
+     */
+    public boolean isComplete() {
+        return objectClosed;
+    }
+
+    /**
+     * 已接收的全部文本
+     */
+    public String getText() {
+        return buffer.toString();
+    }
+}
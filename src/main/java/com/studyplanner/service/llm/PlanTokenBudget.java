@@ -0,0 +1,135 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 计划生成的 max_tokens 预算
+ *
+ * 按 模型+输出格式 统计每天计划实际消耗的输出token数（指数加权平均），
+ * 据此为不同天数的请求计算 max_tokens：预算 = 固定开销 + 天数 × 每天token数 × 安全系数。
+ * 预算低于 max-tokens 上限却被截断（finish_reason=length）时说明估计偏低：已输出的token数除以
+ * 已输出的天数（含写到一半的一天）是每天token数的下界，估计值至少上调到该下界。
+ * 预算已达上限时被截断只说明计划太长，不调整估计值。
+ */
+@Component
+public class PlanTokenBudget {
+
+    @Value("${llm.token-budget.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.token-budget.initial-tokens-per-day:120}")
+    private double initialTokensPerDay;
+
+    @Value("${llm.token-budget.overhead-tokens:300}")
+    private int overheadTokens;
+
+    @Value("${llm.token-budget.safety-factor:1.3}")
+    private double safetyFactor;
+
+    @Value("${llm.token-budget.min-tokens:512}")
+    private int minTokens;
+
+    @Value("${llm.token-budget.max-tokens:8192}")
+    private int maxTokens;
+
+    // 截断但服务端未返回usage时估计值的上调比例
+    private static final double TRUNCATION_GROWTH = 1.25;
+
+    private final Map<String, Estimate> estimates = new ConcurrentHashMap<>();
+
+    private class Estimate {
+        double tokensPerDay = initialTokensPerDay;
+        long samples = 0;
+        long truncations = 0;
+        long cappedTruncations = 0;
+
+        synchronized void observe(double sample) {
+            samples++;
+            // 样本较少时接近算术平均，之后以0.1的权重平滑
+            double alpha = Math.max(0.1, 1.0 / samples);
+            tokensPerDay = samples == 1 ? sample : tokensPerDay + alpha * (sample - tokensPerDay);
+        }
+
+        /**
+         * 预算未达上限时被截断：有下界时至少上调到下界，否则按固定比例上调
+         */
+        synchronized void truncated(double lowerBound) {
+            truncations++;
+            tokensPerDay = lowerBound > 0 ? Math.max(tokensPerDay, lowerBound) : tokensPerDay * TRUNCATION_GROWTH;
+        }
+
+        synchronized void cappedTruncation() {
+            cappedTruncations++;
+        }
+    }
+
+    /**
+     * 计算指定天数的 max_tokens；未启用时返回null（使用全局默认值）
+     */
+    public Integer budgetFor(String model, boolean compact, int days) {
+        if (!enabled) {
+            return null;
+        }
+        double perDay = estimates.computeIfAbsent(key(model, compact), k -> new Estimate()).tokensPerDay;
+        long budget = Math.round((overheadTokens + days * perDay) * safetyFactor);
+        return (int) Math.max(minTokens, Math.min(maxTokens, budget));
+    }
+
+    /**
+     * 记录一次计划生成的实际输出token数
+     *
+     * @param days             实际解析出的天数
+     * @param completionTokens 服务端返回的输出token数（0表示未返回usage）
+     * @param truncated        是否因 max_tokens 被截断
+     * @param budget           本次请求使用的 max_tokens（budgetFor 的返回值，可为null）
+     */
+    public void observe(String model, boolean compact, int days, int completionTokens, boolean truncated,
+                        Integer budget) {
+        if (!enabled) {
+            return;
+        }
+        Estimate estimate = estimates.computeIfAbsent(key(model, compact), k -> new Estimate());
+        if (truncated) {
+            if (budget == null || budget >= maxTokens) {
+                estimate.cappedTruncation();
+            } else {
+                // 截断处还有写到一半的一天
+                estimate.truncated(completionTokens > overheadTokens
+                        ? (double) (completionTokens - overheadTokens) / (days + 1) : 0);
+            }
+        } else if (days > 0 && completionTokens > overheadTokens) {
+            estimate.observe((double) (completionTokens - overheadTokens) / days);
+        }
+    }
+
+    private String key(String model, boolean compact) {
+        return model + (compact ? "|compact" : "|verbose");
+    }
+
+    /**
+     * 各模型的每日token估计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minTokens", minTokens);
+        stats.put("maxTokens", maxTokens);
+        Map<String, Object> models = new HashMap<>();
+        estimates.forEach((key, estimate) -> {
+            synchronized (estimate) {
+                models.put(key, Map.of(
+                        "tokensPerDay", Math.round(estimate.tokensPerDay * 10) / 10.0,
+                        "samples", estimate.samples,
+                        "truncations", estimate.truncations,
+                        "cappedTruncations", estimate.cappedTruncations));
+            }
+        });
+        stats.put("estimates", models);
+        return stats;
+    }
+}
@@ -0,0 +1,118 @@
+package com.studyplanner.service.llm;
+
+/**
+ * 推理内容过滤器（DeepSeek-R1 等推理模型）
+ *
+ * 按到达顺序逐段处理回复内容，丢弃 &lt;think&gt;...&lt;/think&gt; 之间的推理过程，只返回正式回答；
+ * 推理内容不做缓冲，仅在分段边界处暂存可能是标签前缀的几个字符。
+ * 每个流（或每次非流式回复）使用一个实例，非线程安全。
+ */
+public class ReasoningFilter {
+
+    private static final String OPEN_TAG = "<think>";
+    private static final String CLOSE_TAG = "</think>";
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean inThink;
+    // 推理块结束后跳过回答开头的空白行
+    private boolean skipLeadingWhitespace;
+    private int reasoningTokens;
+
+    /**
+     * 处理一段回复内容，返回其中属于正式回答的部分（可能为空字符串）
+     */
+    public String accept(String chunk) {
+        if (chunk == null || chunk.isEmpty()) {
+            return "";
+        }
+        String text = pending.length() > 0 ? pending.append(chunk).toString() : chunk;
+        pending.setLength(0);
+
+        StringBuilder answer = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            String tag = inThink ? CLOSE_TAG : OPEN_TAG;
+            int index = text.indexOf(tag, i);
+            if (index >= 0) {
+                emit(text, i, index, answer);
+                i = index + tag.length();
+                inThink = !inThink;
+                skipLeadingWhitespace = !inThink;
+                continue;
+            }
+            int keep = partialTagLength(text, i, tag);
+            emit(text, i, text.length() - keep, answer);
+            pending.append(text, text.length() - keep, text.length());
+            break;
+        }
+        return answer.toString();
+    }
+
+    /**
+     * 处理单独返回的推理内容（delta.reasoning_content），只计数不输出
+     */
+    public void acceptReasoning(String reasoning) {
+        reasoningTokens += ChatContextManager.estimateTokens(reasoning);
+    }
+
+    /**
+     * 流结束时输出暂存的字符；推理块未闭合时丢弃
+     */
+    public String flush() {
+        String rest = pending.toString();
+        pending.setLength(0);
+        StringBuilder answer = new StringBuilder();
+        emit(rest, 0, rest.length(), answer);
+        return answer.toString();
+    }
+
+    /**
+     * 过滤一段完整的回复内容（非流式调用）
+     */
+    public String filter(String content) {
+        if (content == null) {
+            return null;
+        }
+        return accept(content) + flush();
+    }
+
+    /**
+     * 已丢弃的推理内容的估算token数
+     */
+    public int getReasoningTokens() {
+        return reasoningTokens;
+    }
+
+    private void emit(String text, int from, int to, StringBuilder answer) {
+        if (from >= to) {
+            return;
+        }
+        if (inThink) {
+            reasoningTokens += ChatContextManager.estimateTokens(text.substring(from, to));
+            return;
+        }
+        if (skipLeadingWhitespace) {
+            while (from < to && Character.isWhitespace(text.charAt(from))) {
+                from++;
+            }
+            if (from == to) {
+                return;
+            }
+            skipLeadingWhitespace = false;
+        }
+        answer.append(text, from, to);
+    }
+
+    /**
+     * 文本末尾与标签前缀重合的最大长度（标签可能被拆分在两段内容中）
+     */
+    private int partialTagLength(String text, int from, String tag) {
+        int max = Math.min(tag.length() - 1, text.length() - from);
+        for (int length = max; length > 0; length--) {
+            if (text.startsWith(tag.substring(0, length), text.length() - length)) {
+                return length;
+            }
+        }
+        return 0;
+    }
+}
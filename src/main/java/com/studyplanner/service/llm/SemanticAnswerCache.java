@@ -0,0 +1,378 @@
+package com.studyplanner.service.llm;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单轮问答的语义缓存
+ *
+ * 问题规范化后按字符 n-gram（2~3字）哈希为稀疏向量，按分区内的 TF-IDF 加权
+ *（“什么是”“怎么学”这类句式在大量问题中出现，权重随之降低），查询时在同一模型的分区内做最近邻检索，
+ * 余弦相似度不低于阈值即直接返回缓存的回答，不调用LLM。
+ * 全部在本地内存中计算，每个模型分区按LRU淘汰并受条目数和存活时间限制。
+ * 只缓存系统API配置的回答，多轮对话和带客户端 system 消息的请求不参与缓存。
+ * 问题中的版本号、C++/C#/.NET 这类含数字或符号的词必须完全一致才算相近，避免把不同技术的问题当作同一个。
+ */
+@Component
+public class SemanticAnswerCache {
+
+    @Value("${llm.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${llm.answer-cache.similarity-threshold:0.75}")
+    private double similarityThreshold;
+
+    @Value("${llm.answer-cache.max-entries-per-model:2000}")
+    private int maxEntriesPerModel;
+
+    @Value("${llm.answer-cache.ttl-minutes:1440}")
+    private long ttlMinutes;
+
+    @Value("${llm.answer-cache.max-question-chars:300}")
+    private int maxQuestionChars;
+
+    // 哈希向量的维度（2的幂）
+    private static final int DIMENSIONS = 1 << 16;
+
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong similarHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * 规范化问题的稀疏词频向量（维度下标升序）
+     */
+    private static class Vector {
+        final int[] indices;
+        final float[] counts;
+
+        Vector(int[] indices, float[] counts) {
+            this.indices = indices;
+            this.counts = counts;
+        }
+    }
+
+    private static class Entry {
+        final Vector vector;
+        // 问题中含数字或符号的词，相近匹配时必须一致
+        final String signature;
+        final String answer;
+        final long expireAt;
+        // 按分区当前IDF计算的向量模长，分区内容变化后重新计算
+        double norm;
+        long normVersion = -1;
+
+        Entry(Vector vector, String signature, String answer, long expireAt) {
+            this.vector = vector;
+            this.signature = signature;
+            this.answer = answer;
+            this.expireAt = expireAt;
+        }
+    }
+
+    /**
+     * 单个模型的缓存分区，键为规范化后的问题，accessOrder=true 时队首即最久未使用
+     * documentFrequency 记录每个特征出现在多少个已缓存问题中，用于计算IDF
+     */
+    private static class Partition {
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        final int[] documentFrequency = new int[DIMENSIONS];
+        // 分区内容每次变化加1，使缓存的模长失效
+        long version;
+
+        double idf(int index) {
+            return Math.log((entries.size() + 1.0) / (documentFrequency[index] + 1.0)) + 1;
+        }
+
+        double norm(Vector vector) {
+            double sum = 0;
+            for (int i = 0; i < vector.indices.length; i++) {
+                double weight = vector.counts[i] * idf(vector.indices[i]);
+                sum += weight * weight;
+            }
+            return Math.sqrt(sum);
+        }
+
+        /**
+         * 两个向量按当前IDF加权后的余弦相似度
+         */
+        double similarity(Vector query, double queryNorm, Entry other) {
+            double dot = 0;
+            int i = 0;
+            int j = 0;
+            int[] indices = other.vector.indices;
+            float[] counts = other.vector.counts;
+            while (i < query.indices.length && j < indices.length) {
+                if (query.indices[i] == indices[j]) {
+                    double idf = idf(query.indices[i]);
+                    dot += query.counts[i++] * counts[j++] * idf * idf;
+                } else if (query.indices[i] < indices[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return dot == 0 ? 0 : dot / (queryNorm * norm(other));
+        }
+
+        double norm(Entry entry) {
+            if (entry.normVersion != version) {
+                entry.norm = norm(entry.vector);
+                entry.normVersion = version;
+            }
+            return entry.norm;
+        }
+
+        void add(String key, Entry entry) {
+            Entry old = entries.put(key, entry);
+            if (old != null) {
+                remove(old);
+            }
+            for (int index : entry.vector.indices) {
+                documentFrequency[index]++;
+            }
+            version++;
+        }
+
+        void remove(Entry entry) {
+            for (int index : entry.vector.indices) {
+                documentFrequency[index]--;
+            }
+            version++;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 取出单轮对话中的问题；包含 system 消息、助手回复或多个用户消息时返回null
+     * system 消息由客户端提供，会改变回答，不能只按问题缓存，否则一个用户的提示词会影响其他用户拿到的回答
+     */
+    public static String singleTurnQuestion(List<Map<String, String>> messages) {
+        String question = null;
+        for (Map<String, String> message : messages) {
+            String role = message.get("role");
+            if (!"user".equals(role) || question != null) {
+                return null;
+            }
+            question = message.get("content");
+        }
+        return question;
+    }
+
+    /**
+     * 查询与问题最相近的缓存回答，未命中时返回null
+     */
+    public String get(String model, String question) {
+        String key = normalize(question);
+        if (!enabled || key == null) {
+            return null;
+        }
+        Partition partition = partitions.get(model);
+        if (partition == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (partition) {
+            Entry exact = partition.entries.get(key);
+            if (exact != null && exact.expireAt > now) {
+                exactHits.incrementAndGet();
+                return exact.answer;
+            }
+
+            Vector vector = vectorize(key);
+            String signature = signature(key);
+            double queryNorm = partition.norm(vector);
+            String bestKey = null;
+            Entry best = null;
+            double bestScore = similarityThreshold;
+            for (Map.Entry<String, Entry> candidate : partition.entries.entrySet()) {
+                Entry entry = candidate.getValue();
+                if (entry.expireAt <= now || !entry.signature.equals(signature)) {
+                    continue;
+                }
+                double score = partition.similarity(vector, queryNorm, entry);
+                if (score >= bestScore) {
+                    bestScore = score;
+                    bestKey = candidate.getKey();
+                    best = entry;
+                }
+            }
+            if (best == null) {
+                misses.incrementAndGet();
+                return null;
+            }
+            // 刷新LRU顺序
+            partition.entries.get(bestKey);
+            similarHits.incrementAndGet();
+            return best.answer;
+        }
+    }
+
+    /**
+     * 写入问题与回答，分区超出容量时淘汰最久未使用的条目
+     */
+    public void put(String model, String question, String answer) {
+        String key = normalize(question);
+        if (!enabled || key == null || answer == null || answer.isBlank()) {
+            return;
+        }
+        Entry entry = new Entry(vectorize(key), signature(key), answer, System.currentTimeMillis() + ttlMinutes * 60_000L);
+        Partition partition = partitions.computeIfAbsent(model, m -> new Partition());
+        synchronized (partition) {
+            partition.add(key, entry);
+            puts.incrementAndGet();
+            Iterator<Map.Entry<String, Entry>> it = partition.entries.entrySet().iterator();
+            while (partition.entries.size() > maxEntriesPerModel && it.hasNext()) {
+                partition.remove(it.next().getValue());
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 清理过期条目
+     */
+    @Scheduled(fixedRate = 600000)
+    public void cleanupExpired() {
+        long now = System.currentTimeMillis();
+        partitions.values().forEach(partition -> {
+            synchronized (partition) {
+                partition.entries.values().removeIf(entry -> {
+                    if (entry.expireAt > now) {
+                        return false;
+                    }
+                    partition.remove(entry);
+                    return true;
+                });
+            }
+        });
+    }
+
+    /**
+     * 规范化问题：全半角统一、转小写、去掉标点，保留 + # 和词中间的 .（C++、C#、node.js、3.5），
+     * 英文词之间的空白合并为一个空格，中文前后的空白去掉；过长或为空时返回null（不参与缓存）
+     */
+    private String normalize(String question) {
+        if (question == null) {
+            return null;
+        }
+        String text = Normalizer.normalize(question, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); ) {
+            int codePoint = text.codePointAt(i);
+            int next = i + Character.charCount(codePoint);
+            boolean keep = Character.isLetterOrDigit(codePoint) || codePoint == '+' || codePoint == '#'
+                    || (codePoint == '.' && normalized.length() > 0
+                        && Character.isLetterOrDigit(normalized.charAt(normalized.length() - 1))
+                        && next < text.length() && Character.isLetterOrDigit(text.codePointAt(next)));
+            if (keep) {
+                if (pendingSpace && normalized.length() > 0
+                        && !Character.isIdeographic(normalized.codePointBefore(normalized.length()))
+                        && !Character.isIdeographic(codePoint)) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.appendCodePoint(codePoint);
+            } else if (Character.isWhitespace(codePoint)) {
+                pendingSpace = true;
+            }
+            i = next;
+        }
+        if (normalized.length() == 0 || normalized.length() > maxQuestionChars) {
+            return null;
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * 规范化问题中含数字或符号的英文词（c++、c#、vue3、3.5），排序后拼接
+     */
+    private static String signature(String key) {
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= key.length(); i++) {
+            char c = i < key.length() ? key.charAt(i) : ' ';
+            boolean wordChar = (c < 128 && Character.isLetterOrDigit(c)) || c == '+' || c == '#' || c == '.';
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                String token = key.substring(start, i);
+                if (!token.chars().allMatch(Character::isLetter)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        Collections.sort(tokens);
+        return String.join(" ", tokens);
+    }
+
+    /**
+     * 按字符 2-gram 与 3-gram 做特征哈希，得到稀疏词频向量
+     */
+    private Vector vectorize(String text) {
+        String padded = "^" + text + "$";
+        Map<Integer, Float> features = new HashMap<>();
+        for (int n = 2; n <= 3; n++) {
+            for (int i = 0; i + n <= padded.length(); i++) {
+                int index = padded.substring(i, i + n).hashCode() & (DIMENSIONS - 1);
+                features.merge(index, 1f, Float::sum);
+            }
+        }
+
+        int[] indices = features.keySet().stream().mapToInt(Integer::intValue).toArray();
+        Arrays.sort(indices);
+        float[] counts = new float[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            counts[i] = features.get(indices[i]);
+        }
+        return new Vector(indices, counts);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> sizes = new HashMap<>();
+        partitions.forEach((model, partition) -> {
+            synchronized (partition) {
+                sizes.put(model, partition.entries.size());
+            }
+        });
+        long hits = exactHits.get() + similarHits.get();
+        long total = hits + misses.get();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("similarityThreshold", similarityThreshold);
+        stats.put("exactHits", exactHits.get());
+        stats.put("similarHits", similarHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total > 0 ? (double) hits / total : 0.0);
+        stats.put("puts", puts.get());
+        stats.put("evictions", evictions.get());
+        stats.put("entries", sizes);
+        return stats;
+    }
+}
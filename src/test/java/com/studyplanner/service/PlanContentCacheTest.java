@@ -0,0 +1,164 @@
+package com.studyplanner.service;
+
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.event.PlanCheckedInEvent;
+import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlanContentCacheTest {
+
+    private static final Long PLAN_ID = 1L;
+
+    private PlanContentCache cache;
+
+    // 数据库中已完成的任务ID
+    private final Set<Long> completedIds = new CopyOnWriteArraySet<>();
+    private final AtomicInteger planLoads = new AtomicInteger();
+    private final AtomicInteger completionLoads = new AtomicInteger();
+
+    // 在加载过程中执行，用于模拟加载期间并发提交的打卡或失效
+    private Runnable duringDetailLoad;
+    private Runnable duringCompletionLoad;
+
+    @BeforeEach
+    void setUp() {
+        completedIds.clear();
+        planLoads.set(0);
+        completionLoads.set(0);
+        duringDetailLoad = null;
+        duringCompletionLoad = null;
+
+        cache = new PlanContentCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxPlans", 100);
+        ReflectionTestUtils.setField(cache, "maxTotalChars", 1000000L);
+        ReflectionTestUtils.setField(cache, "completionMaxPlans", 100);
+        ReflectionTestUtils.setField(cache, "planMapper", stub(PlanMapper.class, (name, args) -> {
+            if (!"findById".equals(name)) {
+                throw new UnsupportedOperationException(name);
+            }
+            planLoads.incrementAndGet();
+            StudyPlan plan = new StudyPlan();
+            plan.setId(PLAN_ID);
+            plan.setUserId(7L);
+            plan.setStartDate(LocalDate.now());
+            plan.setTotalDays(3);
+            return plan;
+        }));
+        ReflectionTestUtils.setField(cache, "planDetailMapper", stub(PlanDetailMapper.class, (name, args) -> {
+            if ("findByPlanId".equals(name)) {
+                List<PlanDetail> details = new ArrayList<>();
+                for (int day = 1; day <= 3; day++) {
+                    PlanDetail detail = new PlanDetail();
+                    detail.setId(100L + day);
+                    detail.setPlanId(PLAN_ID);
+                    detail.setDayNumber(day);
+                    detail.setContent("第" + day + "天");
+                    details.add(detail);
+                }
+                run(duringDetailLoad);
+                return details;
+            }
+            if ("findCompletedIds".equals(name)) {
+                completionLoads.incrementAndGet();
+                List<Long> ids = new ArrayList<>(completedIds);
+                run(duringCompletionLoad);
+                return ids;
+            }
+            throw new UnsupportedOperationException(name);
+        }));
+    }
+
+    @Test
+    void contentAndCompletionsAreCached() {
+        completedIds.add(101L);
+        PlanContentCache.PlanContent content = cache.getContent(PLAN_ID);
+        assertEquals(1, completedCount(cache.getDetails(content)));
+
+        content = cache.getContent(PLAN_ID);
+        assertEquals(1, completedCount(cache.getDetails(content)));
+        assertEquals(1, planLoads.get());
+        assertEquals(1, completionLoads.get());
+    }
+
+    @Test
+    void checkInUpdatesCachedBitset() {
+        PlanContentCache.PlanContent content = cache.getContent(PLAN_ID);
+        assertEquals(0, completedCount(cache.getDetails(content)));
+
+        completedIds.add(102L);
+        cache.onCheckedIn(new PlanCheckedInEvent(PLAN_ID, 7L, 102L));
+
+        assertEquals(1, cache.getDetail(content, 2).getIsCompleted().intValue());
+        assertEquals(0, cache.getDetail(content, 1).getIsCompleted().intValue());
+        assertEquals(1, completionLoads.get());
+    }
+
+    @Test
+    void checkInDuringBitsetLoadDiscardsTheLoadedBitset() {
+        PlanContentCache.PlanContent content = cache.getContent(PLAN_ID);
+
+        // 读取完成状态之后、写入缓存之前提交了一次打卡：这次加载的位图已过期
+        duringCompletionLoad = () -> {
+            duringCompletionLoad = null;
+            completedIds.add(103L);
+            cache.onCheckedIn(new PlanCheckedInEvent(PLAN_ID, 7L, 103L));
+        };
+        assertEquals(0, completedCount(cache.getDetails(content)));
+
+        // 过期的位图没有进入缓存，下次读取重新加载并看到打卡
+        assertEquals(1, cache.getDetail(content, 3).getIsCompleted().intValue());
+        assertEquals(2, completionLoads.get());
+    }
+
+    @Test
+    void invalidationDuringContentLoadSkipsCaching() {
+        duringDetailLoad = () -> {
+            duringDetailLoad = null;
+            cache.invalidate(PLAN_ID);
+        };
+        cache.getContent(PLAN_ID);
+        cache.getContent(PLAN_ID);
+
+        assertEquals(2, planLoads.get());
+        assertEquals(1L, cache.getStats().get("staleLoads"));
+    }
+
+    private static int completedCount(List<PlanDetail> details) {
+        int count = 0;
+        for (PlanDetail detail : details) {
+            count += detail.getIsCompleted();
+        }
+        return count;
+    }
+
+    private static void run(Runnable action) {
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    private interface Handler {
+        Object invoke(String method, Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Handler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> handler.invoke(method.getName(), args));
+    }
+}
@@ -0,0 +1,119 @@
+package com.studyplanner.service.llm;
+
+import com.studyplanner.service.LLMService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChatContextManagerTest {
+
+    private static final String URL = "https://api.example.com/v1";
+    private static final String KEY = "sk-test";
+    private static final String MODEL = "test-model";
+
+    private ChatContextManager manager;
+    private final AtomicInteger summaryCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        summaryCalls.set(0);
+        manager = new ChatContextManager();
+        ReflectionTestUtils.setField(manager, "enabled", true);
+        ReflectionTestUtils.setField(manager, "maxWindowTokens", 60);
+        ReflectionTestUtils.setField(manager, "targetWindowTokens", 30);
+        ReflectionTestUtils.setField(manager, "summaryMaxTokens", 64);
+        ReflectionTestUtils.setField(manager, "maxConversations", 2);
+        ReflectionTestUtils.setField(manager, "ttlMinutes", 120L);
+        ReflectionTestUtils.setField(manager, "llmService", new LLMService() {
+            @Override
+            public CompletableFuture<String> chatAsync(String baseUrl, String apiKey, String model,
+                                                       List<Map<String, String>> messageList,
+                                                       Integer maxTokensOverride, String endpoint) {
+                return CompletableFuture.completedFuture("摘要" + summaryCalls.incrementAndGet());
+            }
+        });
+    }
+
+    @Test
+    void summaryIsReusedBySameCaller() {
+        List<Map<String, String>> history = history(12);
+        String first = summaryOf(manager.prepare("user:1", "c1", URL, KEY, MODEL, history).join());
+        String second = summaryOf(manager.prepare("user:1", "c1", URL, KEY, MODEL, history).join());
+
+        assertEquals("摘要1", first);
+        assertEquals("摘要1", second);
+        assertEquals(1, summaryCalls.get());
+    }
+
+    @Test
+    void otherCallersDoNotSeeTheSummary() {
+        List<Map<String, String>> history = history(12);
+        manager.prepare("ip:10.0.0.1", "shared", "https://guest.example.com/v1", "sk-guest", MODEL, history).join();
+
+        // 相同的会话ID和历史，但调用方或API配置不同
+        String otherUser = summaryOf(manager.prepare("user:2", "shared", URL, KEY, MODEL, history).join());
+        String otherEndpoint = summaryOf(manager.prepare("ip:10.0.0.1", "shared", URL, KEY, MODEL, history).join());
+
+        assertEquals("摘要2", otherUser);
+        assertEquals("摘要3", otherEndpoint);
+    }
+
+    @Test
+    void rewrittenHistoryIsNotSummarizedFromCache() {
+        List<Map<String, String>> history = history(12);
+        manager.prepare("user:1", "c1", URL, KEY, MODEL, history).join();
+
+        List<Map<String, String>> rewritten = new ArrayList<>(history);
+        rewritten.set(0, Map.of("role", "user", "content", "被改写的第一条消息内容"));
+        manager.prepare("user:1", "c1", URL, KEY, MODEL, rewritten).join();
+
+        assertEquals(2, summaryCalls.get());
+    }
+
+    @Test
+    void leastRecentlyUsedConversationIsEvicted() {
+        List<Map<String, String>> history = history(12);
+        manager.prepare("user:1", "a", URL, KEY, MODEL, history).join();
+        manager.prepare("user:1", "b", URL, KEY, MODEL, history).join();
+        manager.prepare("user:1", "a", URL, KEY, MODEL, history).join();
+        // 新会话仍然会被保存，淘汰最久未使用的 b
+        manager.prepare("user:1", "c", URL, KEY, MODEL, history).join();
+        assertEquals(3, summaryCalls.get());
+
+        manager.prepare("user:1", "c", URL, KEY, MODEL, history).join();
+        manager.prepare("user:1", "a", URL, KEY, MODEL, history).join();
+        assertEquals(3, summaryCalls.get());
+        manager.prepare("user:1", "b", URL, KEY, MODEL, history).join();
+        assertEquals(4, summaryCalls.get());
+        assertEquals(2L, manager.getStats().get("evictions"));
+    }
+
+    private static List<Map<String, String>> history(int turns) {
+        List<Map<String, String>> messages = new ArrayList<>();
+        for (int i = 0; i < turns; i++) {
+            messages.add(Map.of("role", i % 2 == 0 ? "user" : "assistant",
+                    "content", "第" + i + "条消息，讨论数据结构的学习顺序"));
+        }
+        return messages;
+    }
+
+    private static String summaryOf(List<Map<String, String>> prepared) {
+        for (Map<String, String> message : prepared) {
+            if ("system".equals(message.get("role"))) {
+                String content = message.get("content");
+                assertTrue(content.contains("摘要"));
+                return content.substring(content.indexOf('\n') + 1);
+            }
+        }
+        return null;
+    }
+}
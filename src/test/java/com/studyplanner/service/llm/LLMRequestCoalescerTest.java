@@ -0,0 +1,143 @@
+package com.studyplanner.service.llm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LLMRequestCoalescerTest {
+
+    private static final String KEY = "key";
+
+    private LLMRequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new LLMRequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        ReflectionTestUtils.setField(coalescer, "maxWaiters", 50);
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 5000L);
+    }
+
+    @Test
+    void followerSharesLeaderResult() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            await(release);
+            return "answer";
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, () -> {
+            calls.incrementAndGet();
+            return "own";
+        }));
+        waitForWaiter();
+        release.countDown();
+
+        assertEquals("answer", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("answer", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void cancelledLeaderHandsOverToFollower() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        Thread[] leaderThread = new Thread[1];
+
+        CompletableFuture<String> leader = new CompletableFuture<>();
+        leaderThread[0] = new Thread(() -> {
+            try {
+                leader.complete(coalescer.execute(KEY, () -> {
+                    leaderStarted.countDown();
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RuntimeException("cancelled", e);
+                    }
+                    return "leader";
+                }));
+            } catch (Throwable t) {
+                leader.completeExceptionally(t);
+            }
+        });
+        leaderThread[0].start();
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(
+                () -> coalescer.execute(KEY, () -> "follower"));
+        waitForWaiter();
+        leaderThread[0].interrupt();
+
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        assertEquals("follower", follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, coalescer.getStats().get("cancelledLeaders"));
+    }
+
+    @Test
+    void leaderFailureIsSharedWithFollowers() throws Exception {
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, () -> {
+            leaderStarted.countDown();
+            await(release);
+            throw new IllegalStateException("upstream 500");
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> follower = CompletableFuture.supplyAsync(
+                () -> coalescer.execute(KEY, () -> "own"));
+        waitForWaiter();
+        release.countDown();
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+        assertEquals("upstream 500", error.getCause().getMessage());
+        assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void followerGivesUpAfterMaxWait() throws Exception {
+        ReflectionTestUtils.setField(coalescer, "maxWaitMs", 100L);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> coalescer.execute(KEY, () -> {
+            leaderStarted.countDown();
+            await(release);
+            return "late";
+        }));
+        assertTrue(leaderStarted.await(5, TimeUnit.SECONDS));
+
+        assertThrows(RuntimeException.class, () -> coalescer.execute(KEY, () -> "own"));
+        assertEquals(1L, coalescer.getStats().get("waitTimeouts"));
+        release.countDown();
+        assertEquals("late", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    private void waitForWaiter() throws InterruptedException {
+        // 等待者登记后才会阻塞在 future 上，这里给它一点时间进入等待
+        Thread.sleep(200);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
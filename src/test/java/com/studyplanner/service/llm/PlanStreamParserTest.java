@@ -0,0 +1,77 @@
+package com.studyplanner.service.llm;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlanStreamParserTest {
+
+    // 字符串中包含括号、转义引号和反斜杠，resources 为嵌套数组
+    private static final String PLAN = "好的，以下是计划：\n```json\n{\"title\":\"Java \\\"入门\\\" {基础}\","
+            + "\"summary\":\"路径 C:\\\\java\\\\bin ]}\","
+            + "\"dailyPlans\":["
+            + "{\"day\":1,\"content\":\"学习 {} 与 [] 的用法，注意 \\\"}\\\" 不是结束\",\"resources\":[\"文档\",\"[视频]\"]},"
+            + "{\"day\":2,\"content\":\"反斜杠结尾\\\\\",\"resources\":[]},"
+            + "{\"day\":3,\"content\":\"练习\",\"resources\":[[\"嵌套\"]]}"
+            + "]}\n```\n以上。";
+
+    @Test
+    void parsesWholeResponse() {
+        PlanStreamParser parser = new PlanStreamParser();
+        assertDays(parser.feed(PLAN));
+        assertEquals("Java \"入门\" {基础}", parser.getTitle());
+        assertEquals("路径 C:\\java\\bin ]}", parser.getSummary());
+        assertTrue(parser.isDailyPlansClosed());
+        assertTrue(parser.isComplete());
+    }
+
+    @Test
+    void bracesAndEscapesSplitAcrossChunks() {
+        // 逐字符输入：转义符、引号和括号都会落在分段边界上
+        PlanStreamParser parser = new PlanStreamParser();
+        List<String> elements = new ArrayList<>();
+        for (int i = 0; i < PLAN.length(); i++) {
+            elements.addAll(parser.feed(PLAN.substring(i, i + 1)));
+        }
+        assertDays(elements);
+        assertEquals("Java \"入门\" {基础}", parser.getTitle());
+        assertEquals("路径 C:\\java\\bin ]}", parser.getSummary());
+    }
+
+    @Test
+    void everyTwoChunkSplitGivesSameResult() {
+        for (int split = 1; split < PLAN.length(); split++) {
+            PlanStreamParser parser = new PlanStreamParser();
+            List<String> elements = new ArrayList<>(parser.feed(PLAN.substring(0, split)));
+            elements.addAll(parser.feed(PLAN.substring(split)));
+            assertEquals(3, elements.size(), "split at " + split);
+            assertEquals("反斜杠结尾\\", JSON.parseObject(elements.get(1)).getString("content"), "split at " + split);
+        }
+    }
+
+    @Test
+    void elementIsReturnedOnlyOnceItCloses() {
+        PlanStreamParser parser = new PlanStreamParser();
+        assertTrue(parser.feed("{\"title\":\"t\",\"dailyPlans\":[{\"day\":1,\"content\":\"}").isEmpty());
+        assertEquals(1, parser.feed("\"}").size());
+        assertFalse(parser.isDailyPlansClosed());
+        assertFalse(parser.isComplete());
+    }
+
+    private void assertDays(List<String> elements) {
+        assertEquals(3, elements.size());
+        JSONObject first = JSON.parseObject(elements.get(0));
+        assertEquals(1, first.getIntValue("day"));
+        assertEquals("学习 {} 与 [] 的用法，注意 \"}\" 不是结束", first.getString("content"));
+        assertEquals(2, first.getJSONArray("resources").size());
+        assertEquals("反斜杠结尾\\", JSON.parseObject(elements.get(1)).getString("content"));
+        assertEquals(3, JSON.parseObject(elements.get(2)).getIntValue("day"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.studyplanner.service.llm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PlanTokenBudgetTest {
+
+    private static final String MODEL = "test-model";
+
+    private PlanTokenBudget budget;
+
+    @BeforeEach
+    void setUp() {
+        budget = new PlanTokenBudget();
+        ReflectionTestUtils.setField(budget, "enabled", true);
+        ReflectionTestUtils.setField(budget, "initialTokensPerDay", 100.0);
+        ReflectionTestUtils.setField(budget, "overheadTokens", 300);
+        ReflectionTestUtils.setField(budget, "safetyFactor", 1.0);
+        ReflectionTestUtils.setField(budget, "minTokens", 512);
+        ReflectionTestUtils.setField(budget, "maxTokens", 8192);
+    }
+
+    @Test
+    void truncationAtCapDoesNotRaiseEstimate() {
+        // 100天的计划预算被封顶在 max-tokens，截断不说明估计偏低
+        int used = budget.budgetFor(MODEL, true, 100);
+        assertEquals(8192, used);
+        for (int i = 0; i < 5; i++) {
+            budget.observe(MODEL, true, 70, 8192, true, used);
+        }
+        assertEquals(1300, budget.budgetFor(MODEL, true, 10).intValue());
+    }
+
+    @Test
+    void truncationBelowCapRaisesEstimateToLowerBound() {
+        int used = budget.budgetFor(MODEL, true, 20);
+        assertEquals(2300, used);
+        // 2000个token只写完了9天，第10天写到一半：每天至少200个token
+        budget.observe(MODEL, true, 9, 2300, true, used);
+        assertEquals(2300, budget.budgetFor(MODEL, true, 10).intValue());
+
+        // 下界不高于当前估计时保持不变
+        budget.observe(MODEL, true, 19, 2300, true, budget.budgetFor(MODEL, true, 20));
+        assertEquals(2300, budget.budgetFor(MODEL, true, 10).intValue());
+    }
+
+    @Test
+    void truncationWithoutUsageGrowsByFixedRatio() {
+        int used = budget.budgetFor(MODEL, true, 10);
+        budget.observe(MODEL, true, 8, 0, true, used);
+        assertEquals(1550, budget.budgetFor(MODEL, true, 10).intValue());
+    }
+
+    @Test
+    void completedPlanUpdatesEstimate() {
+        budget.observe(MODEL, true, 10, 1800, false, budget.budgetFor(MODEL, true, 10));
+        assertEquals(1800, budget.budgetFor(MODEL, true, 10).intValue());
+    }
+}
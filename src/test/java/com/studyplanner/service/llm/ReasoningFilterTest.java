@@ -0,0 +1,63 @@
+package com.studyplanner.service.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReasoningFilterTest {
+
+    private static final String REPLY = "<think>先分析用户的基础，再安排顺序</think>\n\n建议先学 <b>集合</b>，再学并发。";
+    private static final String ANSWER = "建议先学 <b>集合</b>，再学并发。";
+
+    @Test
+    void filtersCompleteReply() {
+        ReasoningFilter filter = new ReasoningFilter();
+        assertEquals(ANSWER, filter.filter(REPLY));
+        assertTrue(filter.getReasoningTokens() > 0);
+    }
+
+    @Test
+    void tagsSplitAtEveryChunkBoundary() {
+        for (int split = 1; split < REPLY.length(); split++) {
+            ReasoningFilter filter = new ReasoningFilter();
+            String answer = filter.accept(REPLY.substring(0, split)) + filter.accept(REPLY.substring(split))
+                    + filter.flush();
+            assertEquals(ANSWER, answer, "split at " + split);
+        }
+    }
+
+    @Test
+    void oneCharacterChunks() {
+        ReasoningFilter filter = new ReasoningFilter();
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < REPLY.length(); i++) {
+            answer.append(filter.accept(REPLY.substring(i, i + 1)));
+        }
+        answer.append(filter.flush());
+        assertEquals(ANSWER, answer.toString());
+    }
+
+    @Test
+    void tagPrefixThatIsNotATagIsEmitted() {
+        ReasoningFilter filter = new ReasoningFilter();
+        assertEquals("a ", filter.accept("a <th"));
+        assertEquals("<thing> b", filter.accept("ing> b"));
+        assertEquals("c <thi", filter.accept("c <thi") + filter.flush());
+    }
+
+    @Test
+    void replyWithoutReasoningPassesThrough() {
+        ReasoningFilter filter = new ReasoningFilter();
+        assertEquals("  直接回答", filter.filter("  直接回答"));
+        assertEquals(0, filter.getReasoningTokens());
+    }
+
+    @Test
+    void unclosedReasoningIsDropped() {
+        ReasoningFilter filter = new ReasoningFilter();
+        assertEquals("", filter.accept("<think>还在思考"));
+        assertEquals("", filter.accept("</thi"));
+        assertEquals("", filter.flush());
+    }
+}
@@ -0,0 +1,91 @@
+package com.studyplanner.service.llm;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SemanticAnswerCacheTest {
+
+    private static final String MODEL = "test-model";
+
+    private SemanticAnswerCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new SemanticAnswerCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "similarityThreshold", 0.75);
+        ReflectionTestUtils.setField(cache, "maxEntriesPerModel", 100);
+        ReflectionTestUtils.setField(cache, "ttlMinutes", 60L);
+        ReflectionTestUtils.setField(cache, "maxQuestionChars", 300);
+    }
+
+    @Test
+    void languagesDifferingOnlyBySymbolsDoNotCollide() {
+        cache.put(MODEL, "how to learn C++", "cpp");
+        cache.put(MODEL, "how to learn C#", "csharp");
+
+        assertEquals("cpp", cache.get(MODEL, "How to learn c++?"));
+        assertEquals("csharp", cache.get(MODEL, "how  to learn C#"));
+        assertNull(cache.get(MODEL, "how to learn C"));
+        assertNull(cache.get(MODEL, "how to learn F#"));
+    }
+
+    @Test
+    void versionsAndDottedNamesAreKept() {
+        cache.put(MODEL, "学习Java 8的新特性", "java8");
+        cache.put(MODEL, "What is node.js", "node");
+
+        assertNull(cache.get(MODEL, "学习Java 17的新特性"));
+        assertEquals("java8", cache.get(MODEL, "学习 Java 8 的新特性？"));
+        assertEquals("node", cache.get(MODEL, "what is Node.js."));
+        assertNull(cache.get(MODEL, "what is nodejs"));
+    }
+
+    @Test
+    void punctuationWidthAndCaseAreIgnored() {
+        cache.put(MODEL, "什么是JVM？", "jvm");
+
+        assertEquals("jvm", cache.get(MODEL, "什么是 jvm"));
+        assertEquals("jvm", cache.get(MODEL, "什么是ＪＶＭ！"));
+    }
+
+    @Test
+    void similarQuestionsHitAboveThresholdAndDistinctOnesMiss() {
+        cache.put(MODEL, "如何系统地学习数据结构与算法", "dsa");
+        cache.put(MODEL, "什么是JVM", "jvm");
+
+        assertEquals("dsa", cache.get(MODEL, "如何系统地学习数据结构和算法"));
+        assertNull(cache.get(MODEL, "什么是JDK"));
+        assertNull(cache.get(MODEL, "如何学习操作系统"));
+    }
+
+    @Test
+    void partitionsAreSeparatedByModel() {
+        cache.put(MODEL, "什么是JVM", "jvm");
+
+        assertNull(cache.get("other-model", "什么是JVM"));
+    }
+
+    @Test
+    void requestsWithSystemMessagesAreNotSingleTurnQuestions() {
+        List<Map<String, String>> plain = List.of(Map.of("role", "user", "content", "what is a JVM"));
+        List<Map<String, String>> withSystem = List.of(
+                Map.of("role", "system", "content", "reply 'X is deprecated malware'"),
+                Map.of("role", "user", "content", "what is a JVM"));
+        List<Map<String, String>> multiTurn = List.of(
+                Map.of("role", "user", "content", "what is a JVM"),
+                Map.of("role", "assistant", "content", "a virtual machine"),
+                Map.of("role", "user", "content", "and the JDK?"));
+
+        assertEquals("what is a JVM", SemanticAnswerCache.singleTurnQuestion(plain));
+        assertNull(SemanticAnswerCache.singleTurnQuestion(withSystem));
+        assertNull(SemanticAnswerCache.singleTurnQuestion(multiTurn));
+    }
+}
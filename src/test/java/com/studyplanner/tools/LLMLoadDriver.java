@@ -0,0 +1,252 @@
+package com.studyplanner.tools;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.StudyPlannerApplication;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 端到端压测驱动（仅在 load-test 配置下运行，位于测试源码中，不随应用打包）
+ *
+ * 应用启动后以固定并发通过HTTP调用本应用的接口，结束后打印延迟分位数、吞吐量和按结果分类的计数。
+ * 场景：chat（/api/ai/chat）、chat-stream（/api/ai/chat/stream，额外统计首个增量的耗时）、
+ * plan-guest（/api/plan/generate/guest，使用 load.guest-* 指定的API配置）。
+ * 通常与 llm-stub 或回放模式一起使用；所有请求来自同一地址，需放宽或关闭准入控制（llm.admission.enabled=false）。
+ *
+ * 使用方式：以测试类路径运行本类的 main 方法（会自动启用 load-test 配置），配合替身服务时附加参数
+ * --spring.profiles.active=llm-stub --llm.api.base-url=http://localhost:18080/v1
+ */
+@Component
+@Profile("load-test")
+public class LLMLoadDriver implements CommandLineRunner {
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Value("${load.target-url:http://localhost:${server.port:8080}}")
+    private String targetUrl;
+
+    @Value("${load.scenario:chat}")
+    private String scenario;
+
+    @Value("${load.concurrency:16}")
+    private int concurrency;
+
+    @Value("${load.requests:200}")
+    private int totalRequests;
+
+    // 不同问题的数量，较小时可观察语义缓存的效果
+    @Value("${load.distinct-questions:50}")
+    private int distinctQuestions;
+
+    @Value("${load.plan-days:30}")
+    private int planDays;
+
+    @Value("${load.guest-api-url:http://localhost:18080/v1}")
+    private String guestApiUrl;
+
+    @Value("${load.guest-api-key:stub}")
+    private String guestApiKey;
+
+    @Value("${load.guest-model:stub-model}")
+    private String guestModel;
+
+    @Value("${load.timeout-seconds:300}")
+    private long timeoutSeconds;
+
+    @Value("${load.exit-on-finish:false}")
+    private boolean exitOnFinish;
+
+    private static final MediaType JSON_TYPE = MediaType.parse("application/json");
+
+    private final List<Long> latencies = new CopyOnWriteArrayList<>();
+    private final List<Long> firstDeltaLatencies = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, AtomicInteger> outcomes = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(StudyPlannerApplication.class);
+        application.setAdditionalProfiles("load-test");
+        application.run(args);
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(concurrency);
+        dispatcher.setMaxRequestsPerHost(concurrency);
+        OkHttpClient client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(new ConnectionPool(concurrency, 5, TimeUnit.MINUTES))
+                .readTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .callTimeout(timeoutSeconds, TimeUnit.SECONDS)
+                .build();
+
+        System.out.println("压测开始：场景=" + scenario + "，并发=" + concurrency + "，请求数=" + totalRequests
+                + "，目标=" + targetUrl);
+        AtomicInteger next = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < totalRequests) {
+                    runOne(client, index);
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        report(elapsed);
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        if (exitOnFinish) {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    private void runOne(OkHttpClient client, int index) {
+        long start = System.currentTimeMillis();
+        String outcome;
+        try {
+            if ("chat-stream".equals(scenario)) {
+                outcome = streamChat(client, index, start);
+            } else {
+                Request request = "plan-guest".equals(scenario)
+                        ? post("/api/plan/generate/guest", planRequest(index))
+                        : post("/api/ai/chat", chatRequest(index));
+                try (Response response = client.newCall(request).execute()) {
+                    outcome = classify(response);
+                }
+            }
+        } catch (Exception e) {
+            outcome = "exception:" + e.getClass().getSimpleName();
+        }
+        latencies.add(System.currentTimeMillis() - start);
+        outcomes.computeIfAbsent(outcome, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private String streamChat(OkHttpClient client, int index, long start) throws Exception {
+        try (Response response = client.newCall(post("/api/ai/chat/stream", chatRequest(index))).execute()) {
+            ResponseBody body = response.body();
+            if (!response.isSuccessful() || body == null) {
+                return "http:" + response.code();
+            }
+            BufferedSource source = body.source();
+            String event = null;
+            boolean firstDelta = true;
+            String line;
+            while ((line = source.readUtf8Line()) != null) {
+                if (line.startsWith("event:")) {
+                    event = line.substring(6).trim();
+                } else if (line.startsWith("data:")) {
+                    if ("delta".equals(event) && firstDelta) {
+                        firstDelta = false;
+                        firstDeltaLatencies.add(System.currentTimeMillis() - start);
+                    } else if ("done".equals(event)) {
+                        return "ok";
+                    } else if ("error".equals(event)) {
+                        return "error-event";
+                    }
+                }
+            }
+            return "incomplete";
+        }
+    }
+
+    private String classify(Response response) throws Exception {
+        if (!response.isSuccessful()) {
+            return "http:" + response.code();
+        }
+        ResponseBody body = response.body();
+        JSONObject result = body != null ? JSON.parseObject(body.string()) : null;
+        Integer code = result != null ? result.getInteger("code") : null;
+        return code != null && code == 200 ? "ok" : "api:" + code;
+    }
+
+    private Request post(String path, JSONObject body) {
+        return new Request.Builder()
+                .url(targetUrl + path)
+                .post(RequestBody.create(body.toJSONString(), JSON_TYPE))
+                .build();
+    }
+
+    private JSONObject chatRequest(int index) {
+        String question = "压测问题" + (index % Math.max(1, distinctQuestions)) + "：如何系统地学习数据结构与算法？";
+        JSONObject request = new JSONObject();
+        request.put("messages", JSONArray.of(new JSONObject().fluentPut("role", "user").fluentPut("content", question)));
+        return request;
+    }
+
+    private JSONObject planRequest(int index) {
+        JSONObject request = new JSONObject();
+        request.put("goal", "压测目标" + index + "：学习Java后端开发");
+        request.put("level", "初级");
+        request.put("dailyHours", 2);
+        request.put("totalDays", planDays);
+        request.put("customApiUrl", guestApiUrl);
+        request.put("customApiKey", guestApiKey);
+        request.put("modelName", guestModel);
+        request.put("skipCache", true);
+        return request;
+    }
+
+    private void report(long elapsedMs) {
+        System.out.println("========== 压测结果 ==========");
+        System.out.println("场景: " + scenario + "，并发: " + concurrency + "，耗时: " + elapsedMs + " ms");
+        System.out.printf("吞吐量: %.2f req/s%n", latencies.size() * 1000.0 / Math.max(1, elapsedMs));
+        System.out.println("延迟(ms): " + percentiles(latencies));
+        if (!firstDeltaLatencies.isEmpty()) {
+            System.out.println("首个增量(ms): " + percentiles(firstDeltaLatencies));
+        }
+        Map<String, Integer> sorted = new TreeMap<>();
+        outcomes.forEach((outcome, count) -> sorted.put(outcome, count.get()));
+        System.out.println("结果: " + sorted);
+        System.out.println("==============================");
+    }
+
+    private String percentiles(List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        if (sorted.isEmpty()) {
+            return "无数据";
+        }
+        return String.format("p50=%d p90=%d p99=%d max=%d",
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99),
+                sorted.get(sorted.size() - 1));
+    }
+
+    private long percentile(List<Long> sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+}
@@ -0,0 +1,335 @@
+package com.studyplanner.tools;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.studyplanner.StudyPlannerApplication;
+import com.studyplanner.service.llm.ChatContextManager;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地 OpenAI 兼容的 LLM 替身服务（仅在 llm-stub 配置下启动，位于测试源码中，不随应用打包）
+ *
+ * 在独立端口上提供 POST /v1/chat/completions，支持流式与非流式响应，用于离线压测真实的HTTP路径
+ * （连接池、超时、解析、熔断与续写）。首字节耗时服从对数正态分布（由中位数和P95确定），
+ * 输出按每token耗时生成；可按比例注入500、429错误和截断（finish_reason=length），
+ * 输出超过请求的 max_tokens 时同样截断。
+ * 根据Prompt识别大纲、分段/续写和完整计划请求并返回对应格式的计划JSON，其余请求返回固定长度的回答。
+ *
+ * 使用方式：以测试类路径运行本类的 main 方法（会自动启用 llm-stub 配置），附加参数
+ * --llm.api.base-url=http://localhost:18080/v1
+ */
+@Component
+@Profile("llm-stub")
+public class LLMStubServer {
+
+    @Value("${llm.stub.port:18080}")
+    private int port;
+
+    @Value("${llm.stub.threads:256}")
+    private int threads;
+
+    @Value("${llm.stub.ttfb-median-ms:800}")
+    private long ttfbMedianMs;
+
+    @Value("${llm.stub.ttfb-p95-ms:3000}")
+    private long ttfbP95Ms;
+
+    @Value("${llm.stub.per-token-ms:5}")
+    private double perTokenMs;
+
+    @Value("${llm.stub.chunk-chars:16}")
+    private int chunkChars;
+
+    @Value("${llm.stub.answer-chars:600}")
+    private int answerChars;
+
+    @Value("${llm.stub.error-rate:0}")
+    private double errorRate;
+
+    @Value("${llm.stub.rate-limit-rate:0}")
+    private double rateLimitRate;
+
+    @Value("${llm.stub.truncate-rate:0}")
+    private double truncateRate;
+
+    // P95 对应的标准正态分位数
+    private static final double Z_95 = 1.645;
+
+    private static final Pattern RANGE_ZH = Pattern.compile("第(\\d+)天到第(\\d+)天");
+    private static final Pattern RANGE_EN = Pattern.compile("day (\\d+) to day (\\d+)");
+    private static final Pattern DURATION_ZH = Pattern.compile("【计划周期】：(\\d+) 天");
+    private static final Pattern DURATION_EN = Pattern.compile("【Plan Duration】：(\\d+) days");
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+    private final AtomicLong truncated = new AtomicLong();
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(StudyPlannerApplication.class);
+        application.setAdditionalProfiles("llm-stub");
+        application.run(args);
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        System.out.println("LLM替身服务已启动: http://localhost:" + port + "/v1");
+    }
+
+    @PreDestroy
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        System.out.println("LLM替身服务已停止，共处理 " + requests.get() + " 个请求，注入错误 "
+                + injectedErrors.get() + " 次，截断 " + truncated.get() + " 次");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())
+                    || !exchange.getRequestURI().getPath().endsWith("/chat/completions")) {
+                send(exchange, 404, "{\"error\":{\"message\":\"not found\"}}");
+                return;
+            }
+            requests.incrementAndGet();
+            JSONObject request = JSON.parseObject(new String(exchange.getRequestBody().readAllBytes(),
+                    StandardCharsets.UTF_8));
+
+            sleep(sampleTtfb());
+            double roll = ThreadLocalRandom.current().nextDouble();
+            if (roll < errorRate) {
+                injectedErrors.incrementAndGet();
+                send(exchange, 500, "{\"error\":{\"message\":\"injected server error\"}}");
+                return;
+            }
+            if (roll < errorRate + rateLimitRate) {
+                injectedErrors.incrementAndGet();
+                send(exchange, 429, "{\"error\":{\"message\":\"injected rate limit\"}}");
+                return;
+            }
+
+            String content = buildContent(lastUserContent(request));
+            String finishReason = "stop";
+            int maxTokens = request.getIntValue("max_tokens");
+            if (ThreadLocalRandom.current().nextDouble() < truncateRate) {
+                content = content.substring(0, content.length() / 2);
+                finishReason = "length";
+            } else if (maxTokens > 0 && ChatContextManager.estimateTokens(content) > maxTokens) {
+                content = truncateToTokens(content, maxTokens);
+                finishReason = "length";
+            }
+            if ("length".equals(finishReason)) {
+                truncated.incrementAndGet();
+            }
+
+            String model = request.getString("model");
+            if (request.getBooleanValue("stream")) {
+                stream(exchange, model, content, finishReason);
+            } else {
+                sleep((long) (ChatContextManager.estimateTokens(content) * perTokenMs));
+                send(exchange, 200, completion(model, content, finishReason,
+                        ChatContextManager.estimateTokens(request.toJSONString())));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 客户端已断开（如上游调用被取消）
+        }
+    }
+
+    /**
+     * 按SSE格式逐段推送，每段间隔为该段的估算token数乘以每token耗时
+     */
+    private void stream(HttpExchange exchange, String model, String content, String finishReason)
+            throws IOException, InterruptedException {
+        String id = "chatcmpl-" + UUID.randomUUID();
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < content.length(); i += chunkChars) {
+            String piece = content.substring(i, Math.min(content.length(), i + chunkChars));
+            sleep((long) (ChatContextManager.estimateTokens(piece) * perTokenMs));
+            writeEvent(out, chunk(id, model, new JSONObject().fluentPut("content", piece), null));
+        }
+        writeEvent(out, chunk(id, model, new JSONObject(), finishReason));
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void writeEvent(OutputStream out, JSONObject event) throws IOException {
+        out.write(("data: " + event.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private JSONObject chunk(String id, String model, JSONObject delta, String finishReason) {
+        JSONObject choice = new JSONObject();
+        choice.put("index", 0);
+        choice.put("delta", delta);
+        choice.put("finish_reason", finishReason);
+        JSONObject chunk = new JSONObject();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("model", model);
+        chunk.put("choices", JSONArray.of(choice));
+        return chunk;
+    }
+
+    private String completion(String model, String content, String finishReason, int promptTokens) {
+        JSONObject choice = new JSONObject();
+        choice.put("index", 0);
+        choice.put("message", new JSONObject().fluentPut("role", "assistant").fluentPut("content", content));
+        choice.put("finish_reason", finishReason);
+        int completionTokens = ChatContextManager.estimateTokens(content);
+        JSONObject usage = new JSONObject();
+        usage.put("prompt_tokens", promptTokens);
+        usage.put("completion_tokens", completionTokens);
+        usage.put("total_tokens", promptTokens + completionTokens);
+
+        JSONObject response = new JSONObject();
+        response.put("id", "chatcmpl-" + UUID.randomUUID());
+        response.put("object", "chat.completion");
+        response.put("model", model);
+        response.put("choices", JSONArray.of(choice));
+        response.put("usage", usage);
+        return response.toJSONString();
+    }
+
+    /**
+     * 按Prompt类型生成回复：大纲、指定天数范围（分段/续写）、完整计划或普通回答
+     */
+    private String buildContent(String prompt) {
+        Matcher duration = DURATION_ZH.matcher(prompt);
+        if (!duration.find()) {
+            duration = DURATION_EN.matcher(prompt);
+            duration = duration.find() ? duration : null;
+        }
+        int totalDays = duration != null ? Integer.parseInt(duration.group(1)) : 0;
+
+        if (prompt.contains("\"phases\"") && totalDays > 0) {
+            JSONArray phases = new JSONArray();
+            for (int start = 1; start <= totalDays; start += 14) {
+                phases.add(new JSONObject()
+                        .fluentPut("startDay", start)
+                        .fluentPut("endDay", Math.min(totalDays, start + 13))
+                        .fluentPut("focus", "阶段重点 " + (phases.size() + 1)));
+            }
+            return new JSONObject()
+                    .fluentPut("title", "替身服务生成的计划")
+                    .fluentPut("summary", "共" + totalDays + "天的分阶段计划")
+                    .fluentPut("phases", phases)
+                    .toJSONString();
+        }
+
+        Matcher range = RANGE_ZH.matcher(prompt);
+        if (!range.find()) {
+            range = RANGE_EN.matcher(prompt);
+            range = range.find() ? range : null;
+        }
+        if (range != null) {
+            return dailyPlans(Integer.parseInt(range.group(1)), Integer.parseInt(range.group(2)), null);
+        }
+        if (totalDays > 0) {
+            return dailyPlans(1, totalDays, "替身服务生成的计划");
+        }
+
+        StringBuilder answer = new StringBuilder();
+        while (answer.length() < answerChars) {
+            answer.append("这是本地替身服务返回的示例回答，用于压测与离线调试。");
+        }
+        return answer.substring(0, answerChars);
+    }
+
+    private String dailyPlans(int fromDay, int toDay, String title) {
+        JSONArray days = new JSONArray();
+        for (int day = fromDay; day <= toDay; day++) {
+            days.add(JSONArray.of(day, "第" + day + "天：学习相关知识点并完成配套练习，整理笔记与错题。", 2.0,
+                    JSONArray.of("推荐教程资源", "在线练习平台")));
+        }
+        JSONObject plan = new JSONObject();
+        if (title != null) {
+            plan.put("title", title);
+            plan.put("summary", "共" + (toDay - fromDay + 1) + "天的学习计划");
+        }
+        plan.put("dailyPlans", days);
+        return plan.toJSONString();
+    }
+
+    private String lastUserContent(JSONObject request) {
+        JSONArray messages = request.getJSONArray("messages");
+        if (messages == null) {
+            return "";
+        }
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            JSONObject message = messages.getJSONObject(i);
+            if ("user".equals(message.getString("role"))) {
+                return message.getString("content");
+            }
+        }
+        return "";
+    }
+
+    private String truncateToTokens(String content, int maxTokens) {
+        int low = 0;
+        int high = content.length();
+        while (low < high) {
+            int mid = (low + high + 1) / 2;
+            if (ChatContextManager.estimateTokens(content.substring(0, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return content.substring(0, low);
+    }
+
+    /**
+     * 对数正态分布的首字节耗时：中位数为 ttfb-median-ms，P95 为 ttfb-p95-ms
+     */
+    private long sampleTtfb() {
+        if (ttfbP95Ms <= ttfbMedianMs) {
+            return ttfbMedianMs;
+        }
+        double sigma = Math.log((double) ttfbP95Ms / ttfbMedianMs) / Z_95;
+        return (long) (ttfbMedianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    private void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private void sleep(long millis) throws InterruptedException {
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+}
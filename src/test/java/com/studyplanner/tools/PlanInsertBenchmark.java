@@ -0,0 +1,173 @@
+package com.studyplanner.tools;
+
+import com.studyplanner.StudyPlannerApplication;
+import com.studyplanner.entity.PlanDetail;
+import com.studyplanner.entity.StudyPlan;
+import com.studyplanner.entity.User;
+import com.studyplanner.mapper.PlanDetailMapper;
+import com.studyplanner.mapper.PlanMapper;
+import com.studyplanner.mapper.UserMapper;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 计划详情写入基准测试（仅在 plan-insert-benchmark 配置下运行，位于测试源码中，不随应用打包）
+ *
+ * 对每个天数分别用三种方式写入 plan_detail 并计时：
+ * row（逐行 INSERT，原来的写法）、multi-row（batchInsert 多行 VALUES，按 plan.detail.batch-size 分块，当前的写法）、
+ * jdbc-batch（BATCH 执行器 + rewriteBatchedStatements）。
+ * 每轮在独立的会话中先插入临时用户和计划，计时只包含每日任务的写入，结束后整体回滚，不会留下数据。
+ * 需要可用的 MySQL；SQL 日志会显著影响逐行写入的耗时，测试时应关闭。
+ *
+ * 使用方式：以测试类路径运行本类的 main 方法（会自动启用 plan-insert-benchmark 配置），建议附加参数
+ * --mybatis.configuration.log-impl=org.apache.ibatis.logging.nologging.NoLoggingImpl
+ */
+@Component
+@Profile("plan-insert-benchmark")
+public class PlanInsertBenchmark implements CommandLineRunner {
+
+    private static final String[] MODES = {"row", "multi-row", "jdbc-batch"};
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Value("${benchmark.plan-insert.days:30,180,365}")
+    private int[] daysList;
+
+    @Value("${benchmark.plan-insert.rounds:5}")
+    private int rounds;
+
+    @Value("${benchmark.plan-insert.warmup-rounds:2}")
+    private int warmupRounds;
+
+    @Value("${plan.detail.batch-size:100}")
+    private int batchSize;
+
+    @Value("${benchmark.plan-insert.exit-on-finish:true}")
+    private boolean exitOnFinish;
+
+    public static void main(String[] args) {
+        SpringApplication application = new SpringApplication(StudyPlannerApplication.class);
+        application.setAdditionalProfiles("plan-insert-benchmark");
+        application.run(args);
+    }
+
+    @Override
+    public void run(String... args) {
+        System.out.println("========== 计划详情写入基准 ==========");
+        System.out.println("轮数: " + rounds + "，预热: " + warmupRounds + "，multi-row 分块: " + batchSize);
+        for (int days : daysList) {
+            for (String mode : MODES) {
+                for (int i = 0; i < warmupRounds; i++) {
+                    runOnce(mode, days);
+                }
+                List<Long> samples = new ArrayList<>();
+                for (int i = 0; i < rounds; i++) {
+                    samples.add(runOnce(mode, days));
+                }
+                Collections.sort(samples);
+                long sum = 0;
+                for (long sample : samples) {
+                    sum += sample;
+                }
+                System.out.printf("%4d天 %-10s p50=%.2fms avg=%.2fms min=%.2fms max=%.2fms%n", days, mode,
+                        samples.get(samples.size() / 2) / 1e6, sum / 1e6 / samples.size(),
+                        samples.get(0) / 1e6, samples.get(samples.size() - 1) / 1e6);
+            }
+        }
+        System.out.println("=====================================");
+        if (exitOnFinish) {
+            System.exit(SpringApplication.exit(applicationContext, () -> 0));
+        }
+    }
+
+    /**
+     * 执行一轮写入，返回写入每日任务的耗时（纳秒）
+     */
+    private long runOnce(String mode, int days) {
+        ExecutorType executorType = "jdbc-batch".equals(mode) ? ExecutorType.BATCH : ExecutorType.SIMPLE;
+        try (SqlSession session = sqlSessionFactory.openSession(executorType, false)) {
+            try {
+                StudyPlan plan = insertPlan(session, days);
+                List<PlanDetail> details = details(plan.getId(), days);
+                PlanDetailMapper detailMapper = session.getMapper(PlanDetailMapper.class);
+
+                long start = System.nanoTime();
+                if ("multi-row".equals(mode)) {
+                    for (int from = 0; from < details.size(); from += batchSize) {
+                        detailMapper.batchInsert(details.subList(from, Math.min(details.size(), from + batchSize)));
+                    }
+                } else {
+                    for (PlanDetail detail : details) {
+                        detailMapper.insert(detail);
+                    }
+                }
+                session.flushStatements();
+                return System.nanoTime() - start;
+            } finally {
+                session.rollback(true);
+            }
+        }
+    }
+
+    /**
+     * 插入临时用户和计划（BATCH 执行器需要刷新后才能拿到自增ID）
+     */
+    private StudyPlan insertPlan(SqlSession session, int days) {
+        User user = new User();
+        user.setUsername("bench_" + System.nanoTime());
+        user.setPassword("-");
+        session.getMapper(UserMapper.class).insert(user);
+        session.flushStatements();
+
+        StudyPlan plan = new StudyPlan();
+        plan.setUserId(user.getId());
+        plan.setTitle("写入基准");
+        plan.setGoal("写入基准");
+        plan.setLevel("初级");
+        plan.setDailyHours(BigDecimal.valueOf(2));
+        plan.setTotalDays(days);
+        plan.setStartDate(LocalDate.now());
+        plan.setEndDate(LocalDate.now().plusDays(days - 1));
+        plan.setStatus("进行中");
+        session.getMapper(PlanMapper.class).insert(plan);
+        session.flushStatements();
+        return plan;
+    }
+
+    /**
+     * 与LLM生成结果规模相近的每日任务
+     */
+    private List<PlanDetail> details(Long planId, int days) {
+        List<PlanDetail> details = new ArrayList<>(days);
+        for (int day = 1; day <= days; day++) {
+            PlanDetail detail = new PlanDetail();
+            detail.setPlanId(planId);
+            detail.setDayNumber(day);
+            detail.setContent("第" + day + "天：复习前一天的要点，学习本阶段的核心概念并完成配套练习，"
+                    + "整理笔记并记录遇到的问题，最后用半小时做一个小项目巩固当天内容。");
+            detail.setDuration(BigDecimal.valueOf(2.0));
+            detail.setResources("[\"官方文档\",\"配套练习题\",\"示例项目\"]");
+            detail.setIsCompleted(0);
+            details.add(detail);
+        }
+        return details;
+    }
+}